@@ -1,12 +1,20 @@
 #pragma once
 
 #include "Buffer.h"
+#include "SharedMemory.h"
 
 /**
  * All current packet IDs. We skip zero just because that's a common error case.
  */
 enum PacketId {
     PacketId_ContainerVersion = 1,
+    PacketId_SharedMemory = 2,
+    PacketId_BulkTransfer = 3,
+    PacketId_StreamOpen = 4,
+    PacketId_StreamData = 5,
+    PacketId_StreamAck = 6,
+    PacketId_StreamClose = 7,
+    PacketId_Cancel = 8,
 };
 
 /**
@@ -34,12 +42,32 @@ public:
      * @param buffer The buffer to read from
      */
     virtual void read(Buffer* buffer) = 0;
+
+    /**
+     * Gets the id of the request this packet belongs to, replies must use the same id as the packet that caused them.
+     * Zero means this packet is not part of a request.
+     *
+     * @return The request id
+     */
+    [[nodiscard]] s32 request(void) const;
+    /**
+     * Sets the id of the request this packet belongs to.
+     *
+     * @param request The new request id
+     */
+    void request(s32 request);
+
+private:
+    /**
+     * The request id of this packet.
+     */
+    s32 requestId = 0;
 };
 
 /**
  * The packet used to communicate the current container version to the JVM.
  *
- * The JVM doesn't send any data.
+ * The JVM sends its own version, which is currently ignored.
  */
 class ContainerVersionPacket : public Packet {
 public:
@@ -50,3 +78,259 @@ public:
     void write(Buffer* buffer) override;
     void read(Buffer* buffer) override;
 };
+
+/**
+ * The packet used to hand the shared memory region to the JVM.
+ *
+ * The JVM sends an empty description, the container replies with the handle and size of the region.
+ */
+class SharedMemoryPacket : public Packet {
+public:
+    SharedMemoryPacket(void) = default;
+    ~SharedMemoryPacket(void) override = default;
+
+    PacketId id(void) override;
+    void write(Buffer* buffer) override;
+    void read(Buffer* buffer) override;
+
+    /**
+     * Sets the region that will be described by this packet.
+     *
+     * @param memory The shared region
+     */
+    void region(SharedMemory* memory);
+
+private:
+    /**
+     * The region to describe.
+     */
+    SharedMemory* memory = nullptr;
+};
+
+/**
+ * The doorbell for a chunk of stream data that was placed in the shared memory ring instead of being sent over the pipe,
+ * it only carries the location of the data. It consumes stream credit like a data packet.
+ */
+class BulkTransferPacket : public Packet {
+public:
+    BulkTransferPacket(void) = default;
+    ~BulkTransferPacket(void) override = default;
+
+    PacketId id(void) override;
+    void write(Buffer* buffer) override;
+    void read(Buffer* buffer) override;
+
+    /**
+     * Sets the location of the transfer.
+     *
+     * @param stream The stream the data belongs to
+     * @param position The transfer position
+     * @param length The transfer length
+     */
+    void transfer(s32 stream, u64 position, u32 length);
+
+private:
+    /**
+     * The id of the stream.
+     */
+    s32 streamId = 0;
+    /**
+     * The ring position of the transfer.
+     */
+    u64 transferPosition = 0;
+    /**
+     * The length of the transfer.
+     */
+    u32 transferLength = 0;
+};
+
+/**
+ * Sent by the JVM to open a stream of a file with an initial amount of credit.
+ */
+class StreamOpenPacket : public Packet {
+public:
+    StreamOpenPacket(void) = default;
+    ~StreamOpenPacket(void) override;
+
+    PacketId id(void) override;
+    void write(Buffer* buffer) override;
+    void read(Buffer* buffer) override;
+
+    /**
+     * Gets the id of the stream.
+     *
+     * @return The stream id
+     */
+    [[nodiscard]] s32 stream(void) const;
+    /**
+     * Gets the initial credit of the stream.
+     *
+     * @return The initial credit
+     */
+    [[nodiscard]] s32 window(void) const;
+    /**
+     * Checks if the JVM mapped the shared memory region and accepts stream data through it.
+     *
+     * @return true if data may be sent as bulk transfers
+     */
+    [[nodiscard]] bool bulk(void) const;
+    /**
+     * Gets the path of the file to stream.
+     *
+     * @return The NUL terminated path
+     */
+    [[nodiscard]] const char* path(void) const;
+
+private:
+    /**
+     * The id of the stream.
+     */
+    s32 streamId = 0;
+    /**
+     * The initial credit of the stream.
+     */
+    s32 streamWindow = 0;
+    /**
+     * If the stream accepts bulk transfers.
+     */
+    bool streamBulk = false;
+    /**
+     * The path of the file to stream, owned by this packet.
+     */
+    char* streamPath = nullptr;
+};
+
+/**
+ * A chunk of stream data sent to the JVM. The data is not copied, it has to outlive the packet.
+ */
+class StreamDataPacket : public Packet {
+public:
+    StreamDataPacket(void) = default;
+    ~StreamDataPacket(void) override = default;
+
+    PacketId id(void) override;
+    void write(Buffer* buffer) override;
+    void read(Buffer* buffer) override;
+
+    /**
+     * Sets the data of this packet.
+     *
+     * @param stream The stream id
+     * @param data The chunk of data
+     * @param length The length of the chunk
+     */
+    void data(s32 stream, const void* data, u32 length);
+
+private:
+    /**
+     * The id of the stream.
+     */
+    s32 streamId = 0;
+    /**
+     * The chunk of data.
+     */
+    const void* chunk = nullptr;
+    /**
+     * The length of the chunk.
+     */
+    u32 chunkLength = 0;
+};
+
+/**
+ * Sent by the JVM to grant more credit to a stream.
+ */
+class StreamAckPacket : public Packet {
+public:
+    StreamAckPacket(void) = default;
+    ~StreamAckPacket(void) override = default;
+
+    PacketId id(void) override;
+    void write(Buffer* buffer) override;
+    void read(Buffer* buffer) override;
+
+    /**
+     * Gets the id of the stream.
+     *
+     * @return The stream id
+     */
+    [[nodiscard]] s32 stream(void) const;
+    /**
+     * Gets the amount of credit granted.
+     *
+     * @return The credit
+     */
+    [[nodiscard]] s32 credit(void) const;
+
+private:
+    /**
+     * The id of the stream.
+     */
+    s32 streamId = 0;
+    /**
+     * The amount of credit granted.
+     */
+    s32 streamCredit = 0;
+};
+
+/**
+ * Ends a stream, either side can send it. A status of 0 is a clean end.
+ */
+class StreamClosePacket : public Packet {
+public:
+    StreamClosePacket(void) = default;
+    ~StreamClosePacket(void) override = default;
+
+    PacketId id(void) override;
+    void write(Buffer* buffer) override;
+    void read(Buffer* buffer) override;
+
+    /**
+     * Gets the id of the stream.
+     *
+     * @return The stream id
+     */
+    [[nodiscard]] s32 stream(void) const;
+    /**
+     * Sets the stream and status of this packet.
+     *
+     * @param stream The stream id
+     * @param status The close status
+     */
+    void close(s32 stream, s32 status);
+
+private:
+    /**
+     * The id of the stream.
+     */
+    s32 streamId = 0;
+    /**
+     * The close status.
+     */
+    s32 streamStatus = 0;
+};
+
+/**
+ * Sent by the JVM when it stopped waiting for a request, the reply to it should not be sent.
+ */
+class CancelPacket : public Packet {
+public:
+    CancelPacket(void) = default;
+    ~CancelPacket(void) override = default;
+
+    PacketId id(void) override;
+    void write(Buffer* buffer) override;
+    void read(Buffer* buffer) override;
+
+    /**
+     * Gets the id of the cancelled request.
+     *
+     * @return The request id
+     */
+    [[nodiscard]] s32 cancelled(void) const;
+
+private:
+    /**
+     * The id of the cancelled request.
+     */
+    s32 cancelledRequest = 0;
+};
@@ -0,0 +1,61 @@
+#pragma once
+
+#include <pthread.h>
+
+#include "types.h"
+
+/**
+ * An internal data structure used to track a single request.
+ */
+struct RequestState;
+
+/**
+ * Tracks the requests the JVM is waiting on so they can be cancelled.
+ *
+ * The reader thread starts tracking a request as soon as it was read, the pool worker that handles it checks if it was
+ * cancelled before doing any work and before replying, then finishes it.
+ */
+class Requests {
+public:
+    Requests(void);
+    /**
+     * Frees any requests that are still tracked.
+     */
+    ~Requests(void);
+
+    /**
+     * Starts tracking a request, zero is ignored because it is not a request.
+     *
+     * @param request The request id
+     */
+    void begin(s32 request);
+    /**
+     * Marks a request as cancelled, does nothing if it already finished.
+     *
+     * @param request The request id
+     */
+    void cancel(s32 request);
+    /**
+     * Checks if a request was cancelled.
+     *
+     * @param request The request id
+     * @return true if the JVM is no longer waiting on the request
+     */
+    bool cancelled(s32 request);
+    /**
+     * Stops tracking a request.
+     *
+     * @param request The request id
+     */
+    void finish(s32 request);
+
+private:
+    /**
+     * The mutex protecting the request list.
+     */
+    pthread_mutex_t mutex;
+    /**
+     * The first request in the list.
+     */
+    RequestState* head;
+};
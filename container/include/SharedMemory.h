@@ -0,0 +1,85 @@
+#pragma once
+
+#include <cstdlib>
+
+#include <pthread.h>
+
+#include "types.h"
+
+/**
+ * A memfd backed block of memory that is shared with the JVM for bulk transfers.
+ *
+ * The region is created before the JVM process is cloned so the handle is inherited, the JVM maps it through
+ * /proc/self/fd once the handle and size have been negotiated over the pipe. It holds a single ring that carries data
+ * from the container to the JVM, the pipe is only used to send doorbell packets that point at a transfer.
+ *
+ * The ring starts with a 128 byte header, the producer owned head position is at offset 0 and the consumer owned tail
+ * position is at offset 64 so they live on their own cache lines. Positions are absolute byte counts, the data offset
+ * of a position is the position modulo the ring capacity. A transfer never wraps, when it doesn't fit the producer
+ * skips the remainder of the ring and the transfer keeps the position from before the skip so the consumer can release
+ * the skipped space with it.
+ */
+class SharedMemory {
+public:
+    /**
+     * The size of the header at the start of the ring.
+     */
+    static constexpr size_t RING_HEADER_SIZE = 128;
+
+    /**
+     * Creates a new shared region.
+     *
+     * @param size The total size of the region in bytes
+     */
+    explicit SharedMemory(size_t size);
+    /**
+     * Unmaps the region and closes the handle.
+     */
+    ~SharedMemory(void);
+
+    /**
+     * Gets the handle of the memfd backing this region.
+     *
+     * @return The file handle
+     */
+    [[nodiscard]] int handle(void) const;
+    /**
+     * Gets the total size of this region in bytes.
+     *
+     * @return The region size
+     */
+    [[nodiscard]] size_t size(void) const;
+    /**
+     * Gets the amount of data that the ring can hold in bytes.
+     *
+     * @return The ring capacity
+     */
+    [[nodiscard]] size_t capacity(void) const;
+
+    /**
+     * Copies data into the ring, blocking until the JVM has released enough space.
+     *
+     * @param data The data to copy
+     * @param length The length of the data
+     * @return The position of the transfer
+     */
+    u64 write(const void* data, u32 length);
+
+private:
+    /**
+     * The memfd handle.
+     */
+    int fd;
+    /**
+     * The size of the region.
+     */
+    size_t length;
+    /**
+     * The mapped region.
+     */
+    u8* memory;
+    /**
+     * The mutex used to ensure only one thread writes to the ring at a time.
+     */
+    pthread_mutex_t writeMutex;
+};
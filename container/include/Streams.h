@@ -0,0 +1,129 @@
+#pragma once
+
+#include <pthread.h>
+
+#include "types.h"
+#include "Communication.h"
+#include "SharedMemory.h"
+
+/**
+ * An internal data structure used to track the state of a single stream.
+ */
+struct StreamState;
+
+/**
+ * Flow controlled streams of data to the JVM, like the output of a process or the contents of a file.
+ *
+ * The JVM opens a stream with an initial amount of credit, writing to a stream consumes that credit and blocks once it
+ * runs out until the JVM acks the data it consumed. Either side can close a stream at any time.
+ *
+ * When the JVM mapped the shared memory region data is placed there and only a doorbell goes over the pipe, which
+ * lifts the pipe payload limit from the chunk size.
+ */
+class Streams {
+public:
+    /**
+     * The largest amount of data sent in a single data packet, keeps packets within the pipe payload limit.
+     */
+    static constexpr size_t MAX_CHUNK = 4096 - 8;
+    /**
+     * The largest amount of data placed in shared memory as a single transfer.
+     */
+    static constexpr size_t MAX_BULK_CHUNK = 64 * 1024;
+
+    /**
+     * Creates a new stream table that sends data with the provided IPC channel.
+     *
+     * @param comms The IPC channel
+     * @param memory The region shared with the JVM
+     */
+    Streams(Communication* comms, SharedMemory* memory);
+    /**
+     * Frees any streams that are still open.
+     */
+    ~Streams(void);
+
+    /**
+     * Registers a stream the JVM opened.
+     *
+     * @param stream The stream id
+     * @param window The initial credit of the stream
+     * @param bulk true if the JVM accepts the data of this stream through shared memory
+     */
+    void open(s32 stream, s32 window, bool bulk);
+    /**
+     * Adds credit to a stream after the JVM consumed some of it.
+     *
+     * @param stream The stream id
+     * @param credit The amount of credit to add
+     */
+    void ack(s32 stream, s32 credit);
+    /**
+     * Handles the JVM closing a stream, any pending or future writes to it will fail.
+     *
+     * @param stream The stream id
+     */
+    void cancel(s32 stream);
+
+    /**
+     * Writes data to a stream, blocking until the JVM granted enough credit.
+     *
+     * @param stream The stream id
+     * @param data The data to write
+     * @param length The length of the data
+     * @return true on success, false if the stream is unknown or was closed
+     */
+    bool write(s32 stream, const void* data, size_t length);
+    /**
+     * Ends a stream and tells the JVM about it.
+     *
+     * @param stream The stream id
+     * @param status 0 for a clean end, anything else is an error
+     */
+    void close(s32 stream, s32 status);
+    /**
+     * Writes the contents of a file to a stream and ends it, blocking while the JVM has no credit left. The stream is
+     * closed with the errno as the status if the file can't be read.
+     *
+     * @param stream The stream id
+     * @param path The file to send
+     */
+    void sendFile(s32 stream, const char* path);
+
+private:
+    /**
+     * The channel used to send data and close packets.
+     */
+    Communication* comms;
+    /**
+     * The region used for bulk transfers.
+     */
+    SharedMemory* memory;
+    /**
+     * The mutex protecting the stream list.
+     */
+    pthread_mutex_t mutex;
+    /**
+     * The condition used to notify writers that credit was added or a stream was closed.
+     */
+    pthread_cond_t creditCond;
+    /**
+     * The first stream in the list.
+     */
+    StreamState* head;
+
+    /**
+     * Finds a stream, the mutex must be held.
+     *
+     * @param stream The stream id
+     * @return The stream state or nullptr
+     */
+    StreamState* find(s32 stream);
+    /**
+     * Unlinks and frees a stream, the mutex must be held.
+     *
+     * @param stream The stream id
+     * @return true if the stream existed
+     */
+    bool remove(s32 stream);
+};
@@ -71,12 +71,16 @@ static int doWrite(int handle, const void* buffer, size_t length) {
 struct PacketHeader {
     int id;
     int length;
+    /**
+     * The request this packet belongs to, echoed back in replies so the JVM can match them up.
+     */
+    int request;
 };
 
 Packet* Communication::readPacket(void) {
     ASSERT(pthread_mutex_lock(&this->readMutex), "Failed to lock readMutex in Communication::readPacket");
 
-    PacketHeader header = {0, 0};
+    PacketHeader header = {0, 0, 0};
     ASSERT(doRead(read, &header, sizeof(header)), "Failed to read packet header");
     ASSERT(!(header.length >= 0 && header.length <= 4096), "Header length was too large or too small: %d", header.length);
 
@@ -92,9 +96,38 @@ Packet* Communication::readPacket(void) {
             packet = new ContainerVersionPacket();
         } break;
 
+        case PacketId_SharedMemory: {
+            packet = new SharedMemoryPacket();
+        } break;
+
+        case PacketId_BulkTransfer: {
+            packet = new BulkTransferPacket();
+        } break;
+
+        case PacketId_StreamOpen: {
+            packet = new StreamOpenPacket();
+        } break;
+
+        case PacketId_StreamData: {
+            packet = new StreamDataPacket();
+        } break;
+
+        case PacketId_StreamAck: {
+            packet = new StreamAckPacket();
+        } break;
+
+        case PacketId_StreamClose: {
+            packet = new StreamClosePacket();
+        } break;
+
+        case PacketId_Cancel: {
+            packet = new CancelPacket();
+        } break;
+
         default: ABORT("Unknown packet id %d", header.id);
     }
     packet->read(buffer);
+    packet->request(header.request);
     delete buffer;
     return packet;
 }
@@ -105,11 +138,13 @@ void Communication::writePacket(Packet* packet) {
     packet->write(buffer);
     PacketHeader header = {
         packet->id(),
-        (int) buffer->position()
+        (int) buffer->position(),
+        packet->request()
     };
 
     ASSERT(pthread_mutex_lock(&this->writeMutex), "Failed to lock readMutex in Communication::writePacket");
     ASSERT(doWrite(write, &header, sizeof(PacketHeader)), "Failed to write packet header");
     ASSERT(doWrite(write, buffer->rawPointer(), header.length), "Failed to write packet payload");
-    ASSERT(pthread_mutex_lock(&this->writeMutex), "Failed to unlock readMutex in Communication::writePacket");
+    ASSERT(pthread_mutex_unlock(&this->writeMutex), "Failed to unlock readMutex in Communication::writePacket");
+    delete buffer;
 }
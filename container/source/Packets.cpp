@@ -1,7 +1,17 @@
+#include <cstring>
+
 #include "Buffer.h"
+#include "logger.h"
 
 #include "Packets.h"
 
+s32 Packet::request(void) const {
+    return requestId;
+}
+void Packet::request(s32 request) {
+    requestId = request;
+}
+
 PacketId ContainerVersionPacket::id(void) {
     return PacketId_ContainerVersion;
 }
@@ -14,3 +24,146 @@ void ContainerVersionPacket::write(Buffer* buffer) {
 void ContainerVersionPacket::read(Buffer* buffer) {
     (void)buffer;
 }
+
+PacketId SharedMemoryPacket::id(void) {
+    return PacketId_SharedMemory;
+}
+void SharedMemoryPacket::write(Buffer* buffer) {
+    ASSERT(!memory, "SharedMemoryPacket was written without a region");
+    buffer->writeS32(memory->handle());
+    buffer->writeS64((s64) memory->size());
+}
+void SharedMemoryPacket::read(Buffer* buffer) {
+    (void)buffer;
+}
+void SharedMemoryPacket::region(SharedMemory* memory) {
+    this->memory = memory;
+}
+
+PacketId BulkTransferPacket::id(void) {
+    return PacketId_BulkTransfer;
+}
+void BulkTransferPacket::write(Buffer* buffer) {
+    buffer->writeS32(streamId);
+    buffer->writeS64((s64) transferPosition);
+    buffer->writeS32((s32) transferLength);
+}
+void BulkTransferPacket::read(Buffer* buffer) {
+    // The JVM never sends bulk transfers.
+    (void)buffer;
+}
+void BulkTransferPacket::transfer(s32 stream, u64 position, u32 length) {
+    streamId = stream;
+    transferPosition = position;
+    transferLength = length;
+}
+
+StreamOpenPacket::~StreamOpenPacket(void) {
+    free(streamPath);
+}
+PacketId StreamOpenPacket::id(void) {
+    return PacketId_StreamOpen;
+}
+void StreamOpenPacket::write(Buffer* buffer) {
+    auto length = streamPath ? strlen(streamPath) : 0;
+    buffer->writeS32(streamId);
+    buffer->writeS32(streamWindow);
+    buffer->writeU8(streamBulk ? 1 : 0);
+    buffer->writeS32((s32) length);
+    if(length) {
+        buffer->write(streamPath, length);
+    }
+}
+void StreamOpenPacket::read(Buffer* buffer) {
+    streamId = buffer->readS32();
+    streamWindow = buffer->readS32();
+    streamBulk = buffer->readU8() != 0;
+    // Java strings are sent as their UTF-8 length followed by the bytes, without a terminator.
+    auto length = buffer->readS32();
+    ASSERT(length < 0 || (size_t) length > buffer->remaining(), "Stream path length out of range: %d", length);
+    free(streamPath);
+    streamPath = (char*) malloc((size_t) length + 1);
+    ASSERT(!streamPath, "Failed to allocate stream path");
+    buffer->read(streamPath, (size_t) length);
+    streamPath[length] = 0;
+}
+s32 StreamOpenPacket::stream(void) const {
+    return streamId;
+}
+s32 StreamOpenPacket::window(void) const {
+    return streamWindow;
+}
+bool StreamOpenPacket::bulk(void) const {
+    return streamBulk;
+}
+const char* StreamOpenPacket::path(void) const {
+    return streamPath;
+}
+
+PacketId StreamDataPacket::id(void) {
+    return PacketId_StreamData;
+}
+void StreamDataPacket::write(Buffer* buffer) {
+    buffer->writeS32(streamId);
+    buffer->writeS32((s32) chunkLength);
+    buffer->write(chunk, chunkLength);
+}
+void StreamDataPacket::read(Buffer* buffer) {
+    // The JVM never sends stream data.
+    (void)buffer;
+}
+void StreamDataPacket::data(s32 stream, const void* data, u32 length) {
+    streamId = stream;
+    chunk = data;
+    chunkLength = length;
+}
+
+PacketId StreamAckPacket::id(void) {
+    return PacketId_StreamAck;
+}
+void StreamAckPacket::write(Buffer* buffer) {
+    buffer->writeS32(streamId);
+    buffer->writeS32(streamCredit);
+}
+void StreamAckPacket::read(Buffer* buffer) {
+    streamId = buffer->readS32();
+    streamCredit = buffer->readS32();
+}
+s32 StreamAckPacket::stream(void) const {
+    return streamId;
+}
+s32 StreamAckPacket::credit(void) const {
+    return streamCredit;
+}
+
+PacketId StreamClosePacket::id(void) {
+    return PacketId_StreamClose;
+}
+void StreamClosePacket::write(Buffer* buffer) {
+    buffer->writeS32(streamId);
+    buffer->writeS32(streamStatus);
+}
+void StreamClosePacket::read(Buffer* buffer) {
+    streamId = buffer->readS32();
+    streamStatus = buffer->readS32();
+}
+s32 StreamClosePacket::stream(void) const {
+    return streamId;
+}
+void StreamClosePacket::close(s32 stream, s32 status) {
+    streamId = stream;
+    streamStatus = status;
+}
+
+PacketId CancelPacket::id(void) {
+    return PacketId_Cancel;
+}
+void CancelPacket::write(Buffer* buffer) {
+    buffer->writeS32(cancelledRequest);
+}
+void CancelPacket::read(Buffer* buffer) {
+    cancelledRequest = buffer->readS32();
+}
+s32 CancelPacket::cancelled(void) const {
+    return cancelledRequest;
+}
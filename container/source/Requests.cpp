@@ -0,0 +1,82 @@
+#include <cstdlib>
+
+#include "logger.h"
+
+#include "Requests.h"
+
+struct RequestState {
+    s32 id;
+    bool cancelled;
+    RequestState* next;
+};
+
+// The lint is wrong, mutex is initialized.
+Requests::Requests(void) { // NOLINT(cppcoreguidelines-pro-type-member-init)
+    this->head = nullptr;
+    ASSERT(pthread_mutex_init(&this->mutex, nullptr), "Failed to init Requests::mutex");
+}
+
+Requests::~Requests(void) {
+    while(head) {
+        auto next = head->next;
+        free(head);
+        head = next;
+    }
+    ASSERT(pthread_mutex_destroy(&this->mutex), "Failed to destroy Requests::mutex");
+}
+
+void Requests::begin(s32 request) {
+    if(!request) {
+        return;
+    }
+
+    auto state = (RequestState*) calloc(1, sizeof(RequestState));
+    ASSERT(!state, "Failed to allocate request state");
+    state->id = request;
+
+    ASSERT(pthread_mutex_lock(&this->mutex), "Failed to lock mutex in Requests::begin");
+    state->next = head;
+    head = state;
+    ASSERT(pthread_mutex_unlock(&this->mutex), "Failed to unlock mutex in Requests::begin");
+}
+
+void Requests::cancel(s32 request) {
+    ASSERT(pthread_mutex_lock(&this->mutex), "Failed to lock mutex in Requests::cancel");
+    for(auto state = head; state; state = state->next) {
+        if(state->id == request) {
+            state->cancelled = true;
+            break;
+        }
+    }
+    ASSERT(pthread_mutex_unlock(&this->mutex), "Failed to unlock mutex in Requests::cancel");
+}
+
+bool Requests::cancelled(s32 request) {
+    auto result = false;
+    ASSERT(pthread_mutex_lock(&this->mutex), "Failed to lock mutex in Requests::cancelled");
+    for(auto state = head; state; state = state->next) {
+        if(state->id == request) {
+            result = state->cancelled;
+            break;
+        }
+    }
+    ASSERT(pthread_mutex_unlock(&this->mutex), "Failed to unlock mutex in Requests::cancelled");
+    return result;
+}
+
+void Requests::finish(s32 request) {
+    if(!request) {
+        return;
+    }
+
+    ASSERT(pthread_mutex_lock(&this->mutex), "Failed to lock mutex in Requests::finish");
+    for(auto link = &head; *link; link = &(*link)->next) {
+        if((*link)->id == request) {
+            auto state = *link;
+            *link = state->next;
+            free(state);
+            break;
+        }
+    }
+    ASSERT(pthread_mutex_unlock(&this->mutex), "Failed to unlock mutex in Requests::finish");
+}
@@ -0,0 +1,94 @@
+#include <cerrno>
+#include <cstring>
+
+#include <sched.h>
+#include <unistd.h>
+#include <sys/mman.h>
+
+#include "logger.h"
+
+#include "SharedMemory.h"
+
+/**
+ * Offset of the producer owned head position in a ring header.
+ */
+#define RING_HEAD 0
+/**
+ * Offset of the consumer owned tail position in a ring header.
+ */
+#define RING_TAIL 64
+
+// The lint is wrong, writeMutex is initialized.
+SharedMemory::SharedMemory(size_t size) { // NOLINT(cppcoreguidelines-pro-type-member-init)
+    this->length = size;
+    this->fd = memfd_create("launcher-ipc", 0);
+    ASSERT(this->fd < 0, "Failed to create shared memory: %s", strerror(errno));
+    ASSERT(ftruncate(this->fd, (off_t) size), "Failed to resize shared memory: %s", strerror(errno));
+    this->memory = (u8*) mmap(nullptr, size, PROT_READ | PROT_WRITE, MAP_SHARED, this->fd, 0);
+    ASSERT(this->memory == MAP_FAILED, "Failed to map shared memory: %s", strerror(errno));
+    ASSERT(pthread_mutex_init(&this->writeMutex, nullptr), "Failed to init SharedMemory::writeMutex");
+}
+
+SharedMemory::~SharedMemory(void) {
+    ASSERT(pthread_mutex_destroy(&this->writeMutex), "Failed to destroy SharedMemory::writeMutex");
+    munmap(this->memory, this->length);
+    close(this->fd);
+}
+
+int SharedMemory::handle(void) const {
+    return this->fd;
+}
+
+size_t SharedMemory::size(void) const {
+    return this->length;
+}
+
+size_t SharedMemory::capacity(void) const {
+    return this->length - RING_HEADER_SIZE;
+}
+
+/**
+ * Transfers never wrap, if one doesn't fit the producer skips the rest of the ring.
+ *
+ * @param capacity The capacity of the ring
+ * @param position The position of the transfer
+ * @param length The length of the transfer
+ * @return The data offset of the transfer
+ */
+static size_t transferOffset(size_t capacity, u64 position, u32 length) {
+    auto offset = position % capacity;
+    return capacity - offset < length ? 0 : offset;
+}
+
+/**
+ * Gets the position right after a transfer, including any skipped space before it.
+ *
+ * @param capacity The capacity of the ring
+ * @param position The position of the transfer
+ * @param length The length of the transfer
+ * @return The end of the transfer
+ */
+static u64 transferEnd(size_t capacity, u64 position, u32 length) {
+    auto offset = position % capacity;
+    return capacity - offset < length ? position + (capacity - offset) + length : position + length;
+}
+
+u64 SharedMemory::write(const void* data, u32 length) {
+    auto capacity = this->capacity();
+    ASSERT(length > capacity, "Shared memory transfer too large: %u", length);
+
+    auto head = (u64*) (this->memory + RING_HEAD);
+    auto tail = (u64*) (this->memory + RING_TAIL);
+
+    ASSERT(pthread_mutex_lock(&this->writeMutex), "Failed to lock writeMutex in SharedMemory::write");
+    auto start = __atomic_load_n(head, __ATOMIC_RELAXED);
+    auto end = transferEnd(capacity, start, length);
+    while(end - __atomic_load_n(tail, __ATOMIC_ACQUIRE) > capacity) {
+        sched_yield();
+    }
+    memcpy(this->memory + RING_HEADER_SIZE + transferOffset(capacity, start, length), data, length);
+    __atomic_store_n(head, end, __ATOMIC_RELEASE);
+    ASSERT(pthread_mutex_unlock(&this->writeMutex), "Failed to unlock writeMutex in SharedMemory::write");
+
+    return start;
+}
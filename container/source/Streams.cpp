@@ -0,0 +1,169 @@
+#include <cerrno>
+#include <cstdlib>
+
+#include <fcntl.h>
+#include <unistd.h>
+
+#include "logger.h"
+
+#include "Packets.h"
+#include "Streams.h"
+
+struct StreamState {
+    s32 id;
+    s64 credit;
+    bool bulk;
+    StreamState* next;
+};
+
+// The lint is wrong, mutex and creditCond are initialized.
+Streams::Streams(Communication* comms, SharedMemory* memory) { // NOLINT(cppcoreguidelines-pro-type-member-init)
+    this->comms = comms;
+    this->memory = memory;
+    this->head = nullptr;
+    ASSERT(pthread_mutex_init(&this->mutex, nullptr), "Failed to init Streams::mutex");
+    ASSERT(pthread_cond_init(&this->creditCond, nullptr), "Failed to init Streams::creditCond");
+}
+
+Streams::~Streams(void) {
+    while(head) {
+        auto next = head->next;
+        free(head);
+        head = next;
+    }
+    ASSERT(pthread_cond_destroy(&this->creditCond), "Failed to destroy Streams::creditCond");
+    ASSERT(pthread_mutex_destroy(&this->mutex), "Failed to destroy Streams::mutex");
+}
+
+StreamState* Streams::find(s32 stream) {
+    for(auto state = head; state; state = state->next) {
+        if(state->id == stream) {
+            return state;
+        }
+    }
+    return nullptr;
+}
+
+bool Streams::remove(s32 stream) {
+    for(auto link = &head; *link; link = &(*link)->next) {
+        if((*link)->id == stream) {
+            auto state = *link;
+            *link = state->next;
+            free(state);
+            return true;
+        }
+    }
+    return false;
+}
+
+void Streams::open(s32 stream, s32 window, bool bulk) {
+    auto state = (StreamState*) calloc(1, sizeof(StreamState));
+    ASSERT(!state, "Failed to allocate stream state");
+    state->id = stream;
+    state->credit = window;
+    state->bulk = bulk;
+
+    ASSERT(pthread_mutex_lock(&this->mutex), "Failed to lock mutex in Streams::open");
+    state->next = head;
+    head = state;
+    ASSERT(pthread_mutex_unlock(&this->mutex), "Failed to unlock mutex in Streams::open");
+}
+
+void Streams::ack(s32 stream, s32 credit) {
+    ASSERT(pthread_mutex_lock(&this->mutex), "Failed to lock mutex in Streams::ack");
+    auto state = find(stream);
+    if(state) {
+        state->credit += credit;
+        ASSERT(pthread_cond_broadcast(&this->creditCond), "Failed to broadcast creditCond in Streams::ack");
+    }
+    ASSERT(pthread_mutex_unlock(&this->mutex), "Failed to unlock mutex in Streams::ack");
+}
+
+void Streams::cancel(s32 stream) {
+    ASSERT(pthread_mutex_lock(&this->mutex), "Failed to lock mutex in Streams::cancel");
+    remove(stream);
+    ASSERT(pthread_cond_broadcast(&this->creditCond), "Failed to broadcast creditCond in Streams::cancel");
+    ASSERT(pthread_mutex_unlock(&this->mutex), "Failed to unlock mutex in Streams::cancel");
+}
+
+bool Streams::write(s32 stream, const void* data, size_t length) {
+    auto bytes = (const u8*) data;
+    while(length) {
+        ASSERT(pthread_mutex_lock(&this->mutex), "Failed to lock mutex in Streams::write");
+        auto state = find(stream);
+        auto bulk = state && state->bulk;
+        auto limit = bulk ? MAX_BULK_CHUNK : MAX_CHUNK;
+        auto chunk = length < limit ? length : limit;
+        while((state = find(stream)) && state->credit < (s64) chunk) {
+            // Send what the JVM allows instead of waiting for a full chunk worth of credit.
+            if(state->credit > 0) {
+                chunk = (size_t) state->credit;
+                break;
+            }
+            ASSERT(pthread_cond_wait(&this->creditCond, &this->mutex), "Failed to wait for creditCond in Streams::write");
+        }
+        if(!state) {
+            ASSERT(pthread_mutex_unlock(&this->mutex), "Failed to unlock mutex in Streams::write");
+            return false;
+        }
+        state->credit -= (s64) chunk;
+        ASSERT(pthread_mutex_unlock(&this->mutex), "Failed to unlock mutex in Streams::write");
+
+        if(bulk) {
+            BulkTransferPacket packet;
+            packet.transfer(stream, memory->write(bytes, (u32) chunk), (u32) chunk);
+            comms->writePacket(&packet);
+        } else {
+            StreamDataPacket packet;
+            packet.data(stream, bytes, (u32) chunk);
+            comms->writePacket(&packet);
+        }
+
+        bytes += chunk;
+        length -= chunk;
+    }
+    return true;
+}
+
+void Streams::close(s32 stream, s32 status) {
+    ASSERT(pthread_mutex_lock(&this->mutex), "Failed to lock mutex in Streams::close");
+    auto existed = remove(stream);
+    ASSERT(pthread_cond_broadcast(&this->creditCond), "Failed to broadcast creditCond in Streams::close");
+    ASSERT(pthread_mutex_unlock(&this->mutex), "Failed to unlock mutex in Streams::close");
+
+    if(existed) {
+        StreamClosePacket packet;
+        packet.close(stream, status);
+        comms->writePacket(&packet);
+    }
+}
+
+void Streams::sendFile(s32 stream, const char* path) {
+    auto handle = ::open(path, O_RDONLY | O_CLOEXEC);
+    if(handle < 0) {
+        close(stream, errno);
+        return;
+    }
+
+    // Large enough for a bulk transfer, write splits it up for streams that go over the pipe.
+    auto chunk = (u8*) malloc(MAX_BULK_CHUNK);
+    ASSERT(!chunk, "Failed to allocate stream chunk");
+    s32 status = 0;
+    for(;;) {
+        auto transferred = ::read(handle, chunk, MAX_BULK_CHUNK);
+        if(transferred < 0) {
+            if(errno == EINTR) {
+                continue;
+            }
+            status = errno;
+            break;
+        }
+        // Stop reading once the JVM closed the stream, there is no one left to send the rest to.
+        if(!transferred || !write(stream, chunk, (size_t) transferred)) {
+            break;
+        }
+    }
+    free(chunk);
+    ::close(handle);
+    close(stream, status);
+}
@@ -63,7 +63,7 @@ ThreadPool::~ThreadPool(void) {
 void ThreadPool::submit(Runnable action, void* user) {
     ASSERT(pthread_mutex_lock(&this->mutex), "Failed to lock readMutex in ThreadPool::submit");
     ASSERT(!this->running, "ThreadPool::submit called after ThreadPool::~ThreadPool");
-    while(this->queueHead == (this->queueTail + 1) % this->queueSize) {
+    while((this->queueHead + 1) % this->queueSize == this->queueTail) {
         ASSERT(pthread_cond_wait(&this->queueCond, &this->mutex), "Failed to wait on ThreadPool::queueCond");
     }
     auto entry = &this->queue[this->queueHead];
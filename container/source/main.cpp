@@ -4,18 +4,23 @@
 #include <csignal>
 
 #include <sched.h>
+#include <pthread.h>
 #include <unistd.h>
 #include <dlfcn.h>
 #include <linux/sched.h>
 #include <sys/syscall.h>
 #include <sys/types.h>
 #include <sys/prctl.h>
+#include <sys/stat.h>
 
 #include <jni.h>
 
 #include "logger.h"
 #include "Communication.h"
 #include "File.h"
+#include "Requests.h"
+#include "SharedMemory.h"
+#include "Streams.h"
 #include "ThreadPool.h"
 
 /**
@@ -120,6 +125,55 @@ static void setupNamespace(ParentCallback parent, ChildCallback child) {
     }
 }
 
+/**
+ * The dynamic CDS archive of the JVM, relative to the working directory like the libraries of the stub.
+ */
+#define CDS_DIRECTORY "libraries/cds"
+#define CDS_ARCHIVE CDS_DIRECTORY "/launcher.jsa"
+
+/**
+ * Picks the class data sharing options for the JVM. LAUNCHER_CDS can be "off", "train" or "auto", which is the default.
+ * Auto maps the archive when there is one and records a new one when the JVM exits otherwise. The stub deletes the
+ * archive when the libraries or plugins it was recorded with changed, so the next start records it again.
+ *
+ * @param options Where to write the options, must have room for three
+ * @return The amount of options written
+ */
+static int classDataSharingOptions(JavaVMOption* options) {
+    auto mode = getenv("LAUNCHER_CDS");
+    if(!mode) {
+        mode = (char*) "auto";
+    }
+
+    bool train;
+    if(!strcmp(mode, "off")) {
+        return 0;
+    } else if(!strcmp(mode, "train")) {
+        train = true;
+    } else if(!strcmp(mode, "auto")) {
+        train = access(CDS_ARCHIVE, R_OK) != 0;
+    } else {
+        FATAL("Unknown LAUNCHER_CDS mode %s, class data sharing disabled", mode);
+        return 0;
+    }
+
+    // The JVM does not create the directory for us.
+    if(train && ((mkdir("libraries", 0755) && errno != EEXIST) || (mkdir(CDS_DIRECTORY, 0755) && errno != EEXIST))) {
+        FATAL("Failed to create " CDS_DIRECTORY ": %s", strerror(errno));
+        return 0;
+    }
+
+    options[0].optionString = (char*) "-Dlauncher.cds.archive=" CDS_ARCHIVE;
+    if(train) {
+        options[1].optionString = (char*) "-Dlauncher.cds.mode=train";
+        options[2].optionString = (char*) "-XX:ArchiveClassesAtExit=" CDS_ARCHIVE;
+    } else {
+        options[1].optionString = (char*) "-Dlauncher.cds.mode=use";
+        options[2].optionString = (char*) "-XX:SharedArchiveFile=" CDS_ARCHIVE;
+    }
+    return 3;
+}
+
 /**
  * Launches the JVM used for the Java side of the launcher.
  *
@@ -142,15 +196,18 @@ static int launchJvm(int readPipe, int writePipe) {
     }
 
     // TODO More intelligent JVM options, download the stub and use the downloaded path
-    auto options = new JavaVMOption[2];
-    options[0].optionString = (char*) "-Djava.class.path=/home/gudenau/projects/cpp/GameLauncher/launcher/modules/stub/build/libs/stub-1.0.0.jar";
-    options[0].extraInfo = nullptr;
-    options[1].optionString = (char*) "-agentlib:jdwp=transport=dt_socket,server=y,suspend=y,address=*:5005";
-    options[1].extraInfo = nullptr;
+    auto options = new JavaVMOption[5];
+    auto optionCount = 0;
+    options[optionCount++].optionString = (char*) "-Djava.class.path=/home/gudenau/projects/cpp/GameLauncher/launcher/modules/stub/build/libs/stub-1.0.0.jar";
+    options[optionCount++].optionString = (char*) "-agentlib:jdwp=transport=dt_socket,server=y,suspend=y,address=*:5005";
+    optionCount += classDataSharingOptions(options + optionCount);
+    for(auto i = 0; i < optionCount; i++) {
+        options[i].extraInfo = nullptr;
+    }
 
     JavaVMInitArgs vmArguments = {};
     vmArguments.version = JNI_VERSION_19;
-    vmArguments.nOptions = 2;
+    vmArguments.nOptions = optionCount;
     vmArguments.options = options;
     vmArguments.ignoreUnrecognized = false;
 
@@ -188,11 +245,52 @@ static int launchJvm(int readPipe, int writePipe) {
     return 0;
 }
 
+/**
+ * Sends a file the JVM asked for on a thread of its own. The thread blocks whenever the JVM has no credit left, on the
+ * pool that would hold up every other request and enough open streams would keep the reader from accepting the acks
+ * that unblock them.
+ *
+ * @param streams The streams of the JVM
+ * @param packet The open request, owned by the thread from now on
+ */
+static void sendFile(Streams* streams, StreamOpenPacket* packet) {
+    struct Task {
+        Streams* streams;
+        StreamOpenPacket* packet;
+    };
+    auto task = (Task*) calloc(1, sizeof(Task));
+    ASSERT(!task, "Failed to allocate stream task");
+    task->streams = streams;
+    task->packet = packet;
+
+    pthread_t thread;
+    ASSERT(pthread_create(&thread, nullptr, [](void* user)->void*{
+        auto task = (Task*) user;
+        task->streams->sendFile(task->packet->stream(), task->packet->path());
+        delete task->packet;
+        free(task);
+        return nullptr;
+    }, task), "Failed to create stream thread");
+    ASSERT(pthread_detach(thread), "Failed to detach stream thread");
+}
+
+/**
+ * The size of the region shared with the JVM for bulk transfers.
+ */
+#define SHARED_MEMORY_SIZE (8 * 1024 * 1024)
+
+/**
+ * The region shared with the JVM, created before the clone so both processes inherit it.
+ */
+static SharedMemory* sharedMemory;
+
 extern "C" int main(int argc, char** argv){
     //TODO Argument parsing
     (void)argc;
     (void)argv;
 
+    sharedMemory = new SharedMemory(SHARED_MEMORY_SIZE);
+
     setupNamespace([](pid_t pid, int readPipe, int writePipe)->int{
         (void) pid;
 
@@ -200,30 +298,97 @@ extern "C" int main(int argc, char** argv){
         // TODO Allow setting custom pool settings, maybe base the default off of host capabilities.
         auto comms = new Communication(readPipe, writePipe);
         auto pool = new ThreadPool(4, 16);
+        auto streams = new Streams(comms, sharedMemory);
+        auto requests = new Requests();
         struct Data {
             Communication* comms;
+            Requests* requests;
             Packet* packet;
         };
 
         for(;;) {
             auto packet = comms->readPacket();
+
+            // Control packets are handled on the reader thread. The pool might be busy with the very request that is
+            // being cancelled and stream control has to be applied in the order the JVM sent it.
+            auto handled = true;
+            switch(packet->id()) {
+                case PacketId_Cancel: {
+                    requests->cancel(((CancelPacket*) packet)->cancelled());
+                } break;
+
+                case PacketId_StreamOpen: {
+                    // The stream is registered here so acks that follow find it, the file is sent from a thread of its
+                    // own that takes over the packet.
+                    auto open = (StreamOpenPacket*) packet;
+                    streams->open(open->stream(), open->window(), open->bulk());
+                    sendFile(streams, open);
+                    packet = nullptr;
+                } break;
+
+                case PacketId_StreamAck: {
+                    auto ack = (StreamAckPacket*) packet;
+                    streams->ack(ack->stream(), ack->credit());
+                } break;
+
+                case PacketId_StreamClose: {
+                    streams->cancel(((StreamClosePacket*) packet)->stream());
+                } break;
+
+                case PacketId_StreamData:
+                case PacketId_BulkTransfer: {
+                    // The JVM never sends stream data.
+                } break;
+
+                default: {
+                    handled = false;
+                } break;
+            }
+            if(handled) {
+                delete packet;
+                continue;
+            }
+            requests->begin(packet->request());
+
             auto data = (Data*) calloc(1, sizeof(Data));
             ASSERT(!data, "Failed to allocate thread pool task state");
             data->comms = comms;
+            data->requests = requests;
             data->packet = packet;
 
             pool->submit([](void* user)->void{
                 auto data = (Data*) user;
                 auto comms = data->comms;
+                auto requests = data->requests;
                 auto packet = data->packet;
 
+                // Requests the JVM gave up on are skipped, but anything that owns resources still has to clean up.
                 switch(packet->id()) {
                     case PacketId_ContainerVersion: {
                         // This pack writes static data and never reads, this is okay.
-                        comms->writePacket(packet);
+                        if(!requests->cancelled(packet->request())) {
+                            comms->writePacket(packet);
+                        }
+                    } break;
+
+                    case PacketId_SharedMemory: {
+                        if(!requests->cancelled(packet->request())) {
+                            ((SharedMemoryPacket*) packet)->region(sharedMemory);
+                            comms->writePacket(packet);
+                        }
+                    } break;
+
+                    case PacketId_StreamOpen:
+                    case PacketId_StreamData:
+                    case PacketId_BulkTransfer:
+                    case PacketId_StreamAck:
+                    case PacketId_StreamClose:
+                    case PacketId_Cancel: {
+                        // Handled by the reader thread.
                     } break;
                 }
 
+                requests->finish(packet->request());
                 delete packet;
                 delete data;
             }, data);
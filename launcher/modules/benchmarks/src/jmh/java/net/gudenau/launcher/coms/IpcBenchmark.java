@@ -0,0 +1,79 @@
+package net.gudenau.launcher.coms;
+
+import net.gudenau.launcher.Versions;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips through {@link Communications} over a {@link IpcLoopback}.
+ *
+ * <ul>
+ *     <li>{@link #roundTrip} is the latency of a single request</li>
+ *     <li>{@link #pipelined} keeps {@link #DEPTH} requests in flight from one thread</li>
+ *     <li>{@link #contended} has several threads making requests at once</li>
+ *     <li>{@link #write} only measures the send path, the fake container drops the packets</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+public class IpcBenchmark {
+    private static final int DEPTH = 64;
+    
+    private IpcLoopback loopback;
+    private ContainerVersionPacket packet;
+    
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        loopback = new IpcLoopback();
+        packet = new ContainerVersionPacket(Versions.LAUNCHER_VERSION);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        loopback.close();
+    }
+    
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public ContainerVersionPacket roundTrip() throws IOException {
+        return Communications.call(packet, ContainerVersionPacket.class);
+    }
+    
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(DEPTH)
+    public void pipelined(Blackhole blackhole) throws IOException {
+        @SuppressWarnings("unchecked")
+        CompletableFuture<ContainerVersionPacket>[] futures = new CompletableFuture[DEPTH];
+        for(int i = 0; i < DEPTH; i++) {
+            futures[i] = Communications.request(packet, ContainerVersionPacket.class);
+        }
+        for(var future : futures) {
+            blackhole.consume(future.join());
+        }
+    }
+    
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Threads(8)
+    public ContainerVersionPacket contended() throws IOException {
+        return Communications.call(packet, ContainerVersionPacket.class);
+    }
+    
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Threads(4)
+    public void write() throws IOException {
+        Communications.writePacket(packet);
+    }
+}
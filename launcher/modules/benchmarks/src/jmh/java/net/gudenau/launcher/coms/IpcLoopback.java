@@ -0,0 +1,62 @@
+package net.gudenau.launcher.coms;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Pipe;
+
+/**
+ * Wires {@link Communications} to an in-process fake container that echoes every request straight back, so the
+ * benchmarks measure the Java side of the channel without the native container.
+ */
+final class IpcLoopback implements AutoCloseable {
+    private final Pipe toContainer;
+    private final Pipe fromContainer;
+    private final Thread echo;
+    
+    IpcLoopback() throws IOException {
+        toContainer = Pipe.open();
+        fromContainer = Pipe.open();
+        
+        echo = new Thread(this::echo, "Fake Container");
+        echo.setDaemon(true);
+        echo.start();
+        
+        Communications.init(fromContainer.source(), toContainer.sink());
+    }
+    
+    // Replies carry the request id of the frame they answer, frames that are not requests are dropped.
+    private void echo() {
+        var reader = new FrameReader(toContainer.source(), 64 * 1024);
+        var reply = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.nativeOrder());
+        try {
+            while(true) {
+                reader.next();
+                if(reader.request() == 0) {
+                    continue;
+                }
+                
+                var payload = reader.payload();
+                reply.clear();
+                reply.putInt(reader.id())
+                    .putInt(payload.remaining())
+                    .putInt(reader.request())
+                    .put(payload)
+                    .flip();
+                while(reply.hasRemaining()) {
+                    fromContainer.sink().write(reply);
+                }
+            }
+        } catch (IOException ignored) {
+            // The launcher closed its end of the pipes.
+        }
+    }
+    
+    @Override
+    public void close() throws Exception {
+        Communications.disable();
+        echo.join();
+        toContainer.source().close();
+        fromContainer.sink().close();
+    }
+}
@@ -0,0 +1,177 @@
+package net.gudenau.launcher.stub;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * A content addressed store for artifacts, every unique file is kept exactly once no matter how many coordinates
+ * point at it.
+ *
+ * Files live in {@code blobs/<first two hex digits>/<sha256>} and {@code index.properties} maps coordinates to hashes.
+ * Artifacts are materialised as hard links wherever they are needed, falling back to copies when the destination is
+ * on another file system. The layout is plain files so other processes sharing the directory can use it as well.
+ */
+final class ArtifactStore {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    private final Path blobs;
+    private final Path index;
+    private final Path lock;
+    private final Map<String, String> hashes = new HashMap<>();
+    
+    ArtifactStore(@NotNull Path root) throws IOException {
+        blobs = root.resolve("blobs");
+        index = root.resolve("index.properties");
+        lock = root.resolve("index.lock");
+        Files.createDirectories(blobs);
+        readIndex(hashes);
+    }
+    
+    /**
+     * Finds the blob of a coordinate.
+     *
+     * @param coordinate The coordinate, like {@code group:name:version}
+     * @return The blob or empty if the coordinate is unknown or its blob went missing
+     */
+    @NotNull Optional<Path> find(@NotNull String coordinate) {
+        String hash;
+        synchronized (hashes) {
+            hash = hashes.get(coordinate);
+        }
+        if(hash == null) {
+            return Optional.empty();
+        }
+        var blob = blob(hash);
+        return Files.isRegularFile(blob) ? Optional.of(blob) : Optional.empty();
+    }
+    
+    /**
+     * Adds a file to the store and replaces it with a link to the stored copy.
+     *
+     * @param coordinate The coordinate of the file
+     * @param file The file to add
+     * @return The file
+     */
+    @NotNull Path add(@NotNull String coordinate, @NotNull Path file) throws IOException {
+        var hash = hash(file);
+        var blob = blob(hash);
+        if(!Files.isRegularFile(blob)) {
+            // Same content either way, so racing another process for the blob is harmless.
+            Files.createDirectories(blob.getParent());
+            var temp = blob.resolveSibling(hash + '.' + ProcessHandle.current().pid() + ".tmp");
+            try {
+                link(file, temp);
+                Files.move(temp, blob, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+        
+        synchronized (hashes) {
+            if(!hash.equals(hashes.put(coordinate, hash))) {
+                writeIndex(coordinate, hash);
+            }
+        }
+        return materialize(blob, file);
+    }
+    
+    /**
+     * Makes destination refer to a blob, preferably as a hard link.
+     *
+     * @param blob The blob from {@link #find(String)}
+     * @param destination Where the artifact is needed
+     * @return The destination
+     */
+    @NotNull Path materialize(@NotNull Path blob, @NotNull Path destination) throws IOException {
+        if(Files.exists(destination) && Files.isSameFile(blob, destination)) {
+            return destination;
+        }
+        
+        var parent = destination.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        var temp = parent.resolve(destination.getFileName() + ".link");
+        link(blob, temp);
+        Files.move(temp, destination, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return destination;
+    }
+    
+    private static void link(Path existing, Path link) throws IOException {
+        Files.deleteIfExists(link);
+        try {
+            Files.createLink(link, existing);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(existing, link, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    private Path blob(String hash) {
+        return blobs.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+    
+    private void readIndex(Map<String, String> hashes) throws IOException {
+        if(!Files.isRegularFile(index)) {
+            return;
+        }
+        var properties = new Properties();
+        try(var reader = Files.newBufferedReader(index)) {
+            properties.load(reader);
+        }
+        for(var name : properties.stringPropertyNames()) {
+            hashes.put(name, properties.getProperty(name));
+        }
+    }
+    
+    // Other processes might have added entries since we read the index, so merge under a file lock before replacing it.
+    private void writeIndex(String coordinate, String hash) throws IOException {
+        try(var channel = FileChannel.open(lock, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            var fileLock = channel.lock();
+            try {
+                var merged = new HashMap<String, String>();
+                readIndex(merged);
+                merged.put(coordinate, hash);
+                hashes.putAll(merged);
+                
+                var properties = new Properties();
+                properties.putAll(merged);
+                var temp = index.resolveSibling(index.getFileName() + ".tmp");
+                try(var writer = Files.newBufferedWriter(temp)) {
+                    properties.store(writer, "Artifact coordinates to sha256 blobs");
+                }
+                Files.move(temp, index, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                fileLock.release();
+            }
+        }
+    }
+    
+    private static String hash(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("Missing required digest SHA-256", e);
+        }
+        
+        var buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        try(var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while(channel.read(buffer.clear()) != -1) {
+                digest.update(buffer.flip());
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
@@ -0,0 +1,88 @@
+package net.gudenau.launcher.stub;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the dynamic CDS archive the container starts the JVM with in sync with the libraries it was recorded with.
+ *
+ * The container passes {@code -Dlauncher.cds.archive} and {@code -Dlauncher.cds.mode}. In {@code train} mode the JVM
+ * writes a new archive when it exits and we record the fingerprint of the library set it was trained against. In
+ * {@code use} mode an archive that no longer matches the fingerprint is deleted so the next start trains a new one.
+ *
+ * The fingerprint covers the launcher jar, every resolved library and every plugin jar, so a launcher update or a
+ * plugin change invalidates the archive.
+ */
+final class ClassDataSharing {
+    private static final String ARCHIVE = System.getProperty("launcher.cds.archive");
+    private static final String MODE = System.getProperty("launcher.cds.mode", "off");
+    
+    static void update(@NotNull Collection<Path> libraries, @NotNull Path plugins) throws IOException {
+        if(ARCHIVE == null || MODE.equals("off")) {
+            return;
+        }
+        
+        var archive = Path.of(ARCHIVE);
+        var fingerprintFile = archive.resolveSibling(archive.getFileName() + ".fingerprint");
+        var fingerprint = fingerprint(libraries, plugins);
+        
+        switch(MODE) {
+            case "train" -> {
+                Files.createDirectories(archive.toAbsolutePath().getParent());
+                var temp = fingerprintFile.resolveSibling(fingerprintFile.getFileName() + ".tmp");
+                Files.writeString(temp, fingerprint);
+                Files.move(temp, fingerprintFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            case "use" -> {
+                String existing;
+                try {
+                    existing = Files.readString(fingerprintFile);
+                } catch (NoSuchFileException e) {
+                    existing = null;
+                }
+                
+                // The archive is mapped already, removing it only affects the next start.
+                if(!fingerprint.equals(existing)) {
+                    Files.deleteIfExists(archive);
+                    Files.deleteIfExists(fingerprintFile);
+                }
+            }
+            default -> throw new IllegalArgumentException("Unknown CDS mode: " + MODE);
+        }
+    }
+    
+    private static String fingerprint(Collection<Path> libraries, Path plugins) throws IOException {
+        var files = new ArrayList<Path>(libraries);
+        if(Files.isDirectory(plugins)) {
+            try(var stream = Files.list(plugins)) {
+                stream.filter((file) -> file.getFileName().toString().endsWith(".jar"))
+                    .forEach(files::add);
+            }
+        }
+        
+        List<String> lines = new ArrayList<>();
+        lines.add("java " + Runtime.version());
+        for(var file : files) {
+            var path = file.toAbsolutePath().normalize();
+            var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            lines.add(path + " " + attributes.size() + " " + attributes.lastModifiedTime().toMillis());
+        }
+        return lines.stream()
+            .sorted()
+            .collect(Collectors.joining("\n", "", "\n"));
+    }
+    
+    private ClassDataSharing() {
+        throw new AssertionError();
+    }
+}
@@ -0,0 +1,41 @@
+package net.gudenau.launcher.stub;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A Maven artifact coordinate.
+ *
+ * @param group The group id
+ * @param name The artifact id
+ * @param version The version, might be a range before resolution
+ */
+record Coordinate(@NotNull String group, @NotNull String name, @NotNull String version) {
+    static @NotNull Coordinate parse(@NotNull String coordinate) {
+        var parts = coordinate.split(":");
+        if(parts.length != 3) {
+            throw new IllegalArgumentException("Invalid coordinate: " + coordinate);
+        }
+        return new Coordinate(parts[0], parts[1], parts[2]);
+    }
+    
+    /**
+     * Gets the group and artifact id, the key used for version mediation.
+     */
+    @NotNull String key() {
+        return group + ':' + name;
+    }
+    
+    /**
+     * Gets the path of a file of this artifact relative to the repository root.
+     *
+     * @param extension The file extension, like {@code jar} or {@code pom}
+     */
+    @NotNull String path(@NotNull String extension) {
+        return group.replace('.', '/') + '/' + name + '/' + version + '/' + name + '-' + version + '.' + extension;
+    }
+    
+    @Override
+    public String toString() {
+        return group + ':' + name + ':' + version;
+    }
+}
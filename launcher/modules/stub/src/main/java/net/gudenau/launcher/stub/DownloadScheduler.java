@@ -0,0 +1,224 @@
+package net.gudenau.launcher.stub;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.FileNotFoundException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules downloads so that every host only sees a limited amount of concurrent requests, with HTTP/2 these end up
+ * as streams on a single connection.
+ *
+ * Waiting downloads start in {@link Priority} order and then in submission order. Failed downloads are retried with
+ * exponential backoff and jitter, a missing file is never retried.
+ */
+final class DownloadScheduler {
+    /**
+     * The order downloads are started in when a host is busy.
+     */
+    enum Priority {
+        /**
+         * Required before the launcher can start.
+         */
+        CRITICAL,
+        /**
+         * Required before a game can start.
+         */
+        NORMAL,
+        /**
+         * Nice to have, like prefetching.
+         */
+        BACKGROUND,
+    }
+    
+    private static final class Task {
+        private final URI uri;
+        private final Path target;
+        private final Priority priority;
+        private final long sequence;
+        private final int maxAttempts;
+        private final CompletableFuture<Path> future = new CompletableFuture<>();
+        private int attempts;
+        
+        private Task(URI uri, Path target, Priority priority, long sequence, int maxAttempts) {
+            this.uri = uri;
+            this.target = target;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.maxAttempts = maxAttempts;
+        }
+    }
+    
+    private static final class Host {
+        private final PriorityQueue<Task> queue = new PriorityQueue<>(
+            Comparator.<Task, Priority>comparing((task) -> task.priority).thenComparingLong((task) -> task.sequence)
+        );
+        private int active;
+    }
+    
+    private final Downloader downloader;
+    private final Executor executor;
+    private final int maxPerHost;
+    private final int maxAttempts;
+    private final Duration backoff;
+    
+    private final Map<String, Host> hosts = new HashMap<>();
+    private long sequence;
+    
+    /**
+     * @param downloader The downloader that does the actual work
+     * @param executor The executor used to restart delayed retries
+     * @param maxPerHost The maximum amount of concurrent downloads from a single host
+     * @param maxAttempts The maximum amount of attempts per download
+     * @param backoff The delay before the first retry, doubled for every retry after it
+     */
+    DownloadScheduler(@NotNull Downloader downloader, @NotNull Executor executor, int maxPerHost, int maxAttempts, @NotNull Duration backoff) {
+        if(maxPerHost < 1 || maxAttempts < 1) {
+            throw new IllegalArgumentException("maxPerHost and maxAttempts have to be positive");
+        }
+        this.downloader = downloader;
+        this.executor = executor;
+        this.maxPerHost = maxPerHost;
+        this.maxAttempts = maxAttempts;
+        this.backoff = backoff;
+    }
+    
+    /**
+     * Queues a download.
+     *
+     * @param uri The remote file
+     * @param target The local file
+     * @param priority The priority of the download
+     * @return A future of the target
+     */
+    @NotNull CompletableFuture<Path> submit(@NotNull URI uri, @NotNull Path target, @NotNull Priority priority) {
+        return submit(uri, target, priority, maxAttempts);
+    }
+    
+    /**
+     * Queues a download with a custom amount of attempts, callers that can move to another host pass 1 and handle
+     * retries themselves.
+     *
+     * @param uri The remote file
+     * @param target The local file
+     * @param priority The priority of the download
+     * @param attempts The maximum amount of attempts
+     * @return A future of the target
+     */
+    @NotNull CompletableFuture<Path> submit(@NotNull URI uri, @NotNull Path target, @NotNull Priority priority, int attempts) {
+        if(attempts < 1) {
+            throw new IllegalArgumentException("attempts has to be positive");
+        }
+        Task task;
+        synchronized (this) {
+            task = new Task(uri, target, priority, sequence++, attempts);
+        }
+        enqueue(task);
+        return task.future;
+    }
+    
+    private void enqueue(Task task) {
+        var host = host(task.uri);
+        synchronized (this) {
+            host.queue.add(task);
+        }
+        pump(host);
+    }
+    
+    private Host host(URI uri) {
+        var authority = uri.getScheme() + "://" + uri.getAuthority();
+        synchronized (this) {
+            return hosts.computeIfAbsent(authority, (ignored) -> new Host());
+        }
+    }
+    
+    private void pump(Host host) {
+        while(true) {
+            Task task;
+            synchronized (this) {
+                if(host.active >= maxPerHost || host.queue.isEmpty()) {
+                    return;
+                }
+                task = host.queue.poll();
+                host.active++;
+            }
+            start(host, task);
+        }
+    }
+    
+    private void start(Host host, Task task) {
+        task.attempts++;
+        CompletableFuture<Path> download;
+        try {
+            download = downloader.download(task.uri, task.target);
+        } catch (Throwable e) {
+            download = CompletableFuture.failedFuture(e);
+        }
+        
+        download.whenComplete((path, exception) -> {
+            synchronized (this) {
+                host.active--;
+            }
+            
+            if(exception == null) {
+                task.future.complete(path);
+            } else {
+                var cause = unwrap(exception);
+                if(task.attempts >= task.maxAttempts || isFatal(cause)) {
+                    task.future.completeExceptionally(cause);
+                } else {
+                    retry(task);
+                }
+            }
+            pump(host);
+        });
+    }
+    
+    private void retry(Task task) {
+        CompletableFuture.runAsync(() -> enqueue(task), CompletableFuture.delayedExecutor(retryDelay(task.attempts), TimeUnit.MILLISECONDS, executor));
+    }
+    
+    int maxAttempts() {
+        return maxAttempts;
+    }
+    
+    /**
+     * Gets the delay before the next attempt.
+     *
+     * @param attempts The amount of attempts that failed so far
+     * @return The delay in milliseconds, with jitter
+     */
+    long retryDelay(int attempts) {
+        var delay = backoff.toMillis() << Math.min(attempts - 1, 16);
+        return delay + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+    
+    private static Throwable unwrap(Throwable exception) {
+        while((exception instanceof CompletionException || exception instanceof UncheckedIOException) && exception.getCause() != null) {
+            exception = exception.getCause();
+        }
+        return exception;
+    }
+    
+    private static boolean isFatal(Throwable exception) {
+        while(exception != null) {
+            if(exception instanceof FileNotFoundException) {
+                return true;
+            }
+            exception = exception.getCause();
+        }
+        return false;
+    }
+}
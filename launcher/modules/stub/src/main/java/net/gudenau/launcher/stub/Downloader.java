@@ -0,0 +1,418 @@
+package net.gudenau.launcher.stub;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads files from Maven style repositories and verifies them against the checksum files next to them.
+ *
+ * Data is streamed into a {@code .part} file next to the target, an interrupted download is resumed with a range
+ * request the next time around. Only verified files are moved into place and the checksum is kept next to them so a
+ * cached file can be checked without touching the network. The sidecar also records the size and modification time
+ * the file had when it was verified, a cached file that still matches them is trusted without hashing it again.
+ *
+ * Every request has to see its response headers within the timeout and a body that stalls for longer than the timeout
+ * is abandoned, so a dead server fails the download instead of hanging it.
+ */
+final class Downloader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    private enum Algorithm {
+        SHA256("SHA-256", "sha256"),
+        SHA1("SHA-1", "sha1"),
+        ;
+        
+        private final String name;
+        private final String extension;
+        
+        Algorithm(String name, String extension) {
+            this.name = name;
+            this.extension = extension;
+        }
+        
+        MessageDigest digest() {
+            try {
+                return MessageDigest.getInstance(name);
+            } catch (NoSuchAlgorithmException e) {
+                throw new AssertionError("Missing required digest " + name, e);
+            }
+        }
+        
+        Path sidecar(Path path) {
+            return path.resolveSibling(path.getFileName() + "." + extension);
+        }
+    }
+    
+    private record Checksum(@NotNull Algorithm algorithm, @NotNull String hash) {}
+    
+    private final HttpClient client;
+    private final Executor executor;
+    private final Duration timeout;
+    
+    /**
+     * @param client The client used for requests
+     * @param executor The executor used for blocking file work, like checking cached files
+     * @param timeout How long a request may wait for its response or for more of its body
+     */
+    Downloader(@NotNull HttpClient client, @NotNull Executor executor, @NotNull Duration timeout) {
+        this.client = client;
+        this.executor = executor;
+        this.timeout = timeout;
+    }
+    
+    /**
+     * Makes sure target holds a verified copy of the file at uri, downloading or resuming it if required. Fails with a
+     * {@link FileNotFoundException} if the server does not have the file. {@code file:} URIs are copied.
+     *
+     * @param uri The remote file
+     * @param target The local file
+     * @return A future of the target
+     */
+    @NotNull CompletableFuture<Path> download(@NotNull URI uri, @NotNull Path target) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return isValid(target);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor).thenCompose((valid) -> {
+            if(valid) {
+                return CompletableFuture.completedFuture(target);
+            }
+            return "file".equals(uri.getScheme()) ? copy(uri, target) : fetch(uri, target);
+        });
+    }
+    
+    // Local mirrors are checked against their checksum files when they have them, plain directories are trusted.
+    private CompletableFuture<Path> copy(URI uri, Path target) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                var source = Path.of(uri);
+                if(!Files.isRegularFile(source)) {
+                    throw new FileNotFoundException("Failed to find " + uri);
+                }
+                
+                Checksum checksum = null;
+                for(var algorithm : Algorithm.values()) {
+                    var sidecar = algorithm.sidecar(source);
+                    if(Files.isRegularFile(sidecar)) {
+                        var hash = Files.readString(sidecar, StandardCharsets.UTF_8).trim().split("\\s+", 2)[0].toLowerCase(Locale.ROOT);
+                        checksum = new Checksum(algorithm, hash);
+                        break;
+                    }
+                }
+                
+                var part = target.resolveSibling(target.getFileName() + ".part");
+                Files.createDirectories(part.getParent());
+                Files.copy(source, part, StandardCopyOption.REPLACE_EXISTING);
+                var algorithm = checksum == null ? Algorithm.SHA256 : checksum.algorithm();
+                var hash = hash(algorithm, part);
+                if(checksum != null && !checksum.hash().equals(hash)) {
+                    Files.deleteIfExists(part);
+                    throw new IOException("Checksum mismatch for " + uri);
+                }
+                writeSidecar(algorithm, target, part, hash);
+                Files.move(part, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                return target;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+    
+    private CompletableFuture<Path> fetch(URI uri, Path target) {
+        var part = target.resolveSibling(target.getFileName() + ".part");
+        return fetchChecksum(uri, 0).thenCompose((checksum) -> fetch(uri, part, checksum, true)
+            .thenCompose((complete) -> {
+                if(complete) {
+                    return CompletableFuture.completedFuture(true);
+                }
+                // The partial file was bad or the server ignored the range, give it one clean attempt.
+                delete(part);
+                return fetch(uri, part, checksum, false);
+            })
+            .thenApplyAsync((complete) -> {
+                try {
+                    if(!complete) {
+                        Files.deleteIfExists(part);
+                        throw new IOException("Checksum mismatch for " + uri);
+                    }
+                    writeSidecar(checksum.algorithm(), target, part, checksum.hash());
+                    Files.move(part, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    return target;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor)
+        );
+    }
+    
+    private boolean isValid(Path target) throws IOException {
+        if(!Files.isRegularFile(target)) {
+            return false;
+        }
+        for(var algorithm : Algorithm.values()) {
+            var sidecar = algorithm.sidecar(target);
+            if(Files.isRegularFile(sidecar)) {
+                var fields = Files.readString(sidecar, StandardCharsets.UTF_8).trim().split("\\s+");
+                var stamp = stamp(target);
+                if(fields.length == 3 && stamp.equals(fields[1] + " " + fields[2])) {
+                    return true;
+                }
+                if(!fields[0].equals(hash(algorithm, target))) {
+                    return false;
+                }
+                // Verified the slow way, remember it for the next start.
+                Files.writeString(sidecar, fields[0] + " " + stamp, StandardCharsets.UTF_8);
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Writes the sidecar of target with the size and modification time of file, which is about to be moved there.
+     */
+    private static void writeSidecar(Algorithm algorithm, Path target, Path file, String hash) throws IOException {
+        Files.writeString(algorithm.sidecar(target), hash + " " + stamp(file), StandardCharsets.UTF_8);
+    }
+    
+    private static String stamp(Path path) throws IOException {
+        var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        return attributes.size() + " " + attributes.lastModifiedTime().toMillis();
+    }
+    
+    private CompletableFuture<Checksum> fetchChecksum(URI uri, int index) {
+        var algorithms = Algorithm.values();
+        if(index >= algorithms.length) {
+            return CompletableFuture.failedFuture(new FileNotFoundException("No checksum available for " + uri));
+        }
+        
+        var algorithm = algorithms[index];
+        var request = HttpRequest.newBuilder(URI.create(uri + "." + algorithm.extension)).timeout(timeout).build();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenCompose((response) -> {
+            // Only a missing checksum moves on to the next algorithm, anything else is worth retrying later.
+            var status = response.statusCode();
+            if(status == 404 || status == 410) {
+                return fetchChecksum(uri, index + 1);
+            } else if(status != 200) {
+                return CompletableFuture.failedFuture(new IOException("Failed to download " + request.uri() + ": HTTP " + status));
+            }
+            // Some repositories append the file name after the hash.
+            var hash = response.body().trim().split("\\s+", 2)[0].toLowerCase(Locale.ROOT);
+            return CompletableFuture.completedFuture(new Checksum(algorithm, hash));
+        });
+    }
+    
+    /**
+     * Fetches the file into part, resuming from what is already there if allowed.
+     *
+     * @return A future that is true if the complete file matched the checksum
+     */
+    private CompletableFuture<Boolean> fetch(URI uri, Path part, Checksum checksum, boolean resume) {
+        long existing;
+        try {
+            Files.createDirectories(part.getParent());
+            existing = resume && Files.isRegularFile(part) ? Files.size(part) : 0;
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        
+        var builder = HttpRequest.newBuilder(uri).timeout(timeout);
+        if(existing > 0) {
+            builder.header("Range", "bytes=" + existing + "-");
+        }
+        return client.sendAsync(builder.build(), (info) -> bodyHandler(info, part, checksum, existing)).thenApply((response) -> {
+            var status = response.statusCode();
+            if(status == 404 || status == 410) {
+                throw new UncheckedIOException(new FileNotFoundException("Failed to download " + uri + ": HTTP " + status));
+            } else if(status != 200 && status != 206 && status != 416) {
+                throw new UncheckedIOException(new IOException("Failed to download " + uri + ": HTTP " + status));
+            }
+            return response.body();
+        });
+    }
+    
+    private HttpResponse.BodySubscriber<Boolean> bodyHandler(HttpResponse.ResponseInfo info, Path part, Checksum checksum, long existing) {
+        try {
+            switch(info.statusCode()) {
+                case 200 -> {
+                    return new FileSubscriber(part, checksum, 0, timeout);
+                }
+                case 206 -> {
+                    var range = info.headers().firstValue("Content-Range");
+                    if(existing > 0 && range.isPresent() && range.get().startsWith("bytes " + existing + "-")) {
+                        return new FileSubscriber(part, checksum, existing, timeout);
+                    }
+                    return HttpResponse.BodySubscribers.replacing(false);
+                }
+                case 416 -> {
+                    // Nothing left to fetch, the partial file is either complete or garbage.
+                    var complete = existing > 0 && checksum.hash().equals(hash(checksum.algorithm(), part));
+                    return HttpResponse.BodySubscribers.replacing(complete);
+                }
+                default -> {
+                    return HttpResponse.BodySubscribers.replacing(false);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    /**
+     * Writes a response body into a file while hashing it, the result is true if the hash of the entire file matched.
+     * The body fails with a {@link HttpTimeoutException} if no data arrives for longer than the timeout.
+     */
+    private static final class FileSubscriber implements HttpResponse.BodySubscriber<Boolean> {
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        private final FileChannel channel;
+        private final MessageDigest digest;
+        private final String expected;
+        private final long timeout;
+        private volatile long progress = System.nanoTime();
+        private Flow.Subscription subscription;
+        
+        FileSubscriber(Path part, Checksum checksum, long existing, Duration timeout) throws IOException {
+            this.timeout = timeout.toNanos();
+            expected = checksum.hash();
+            digest = checksum.algorithm().digest();
+            channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                if(existing > 0) {
+                    update(digest, channel, existing);
+                    channel.position(existing);
+                }
+                channel.truncate(existing);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+        
+        @Override
+        public CompletionStage<Boolean> getBody() {
+            return result;
+        }
+        
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            progress = System.nanoTime();
+            watch(timeout);
+            subscription.request(1);
+        }
+        
+        private void watch(long delay) {
+            CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS).execute(() -> {
+                if(result.isDone()) {
+                    return;
+                }
+                var idle = System.nanoTime() - progress;
+                if(idle < timeout) {
+                    watch(timeout - idle);
+                } else {
+                    subscription.cancel();
+                    onError(new HttpTimeoutException("Download stalled for " + TimeUnit.NANOSECONDS.toMillis(idle) + " ms"));
+                }
+            });
+        }
+        
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            progress = System.nanoTime();
+            try {
+                for(var buffer : buffers) {
+                    digest.update(buffer.duplicate());
+                    while(buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+                subscription.request(1);
+            } catch (IOException e) {
+                subscription.cancel();
+                onError(e);
+            }
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            close();
+            result.completeExceptionally(throwable);
+        }
+        
+        @Override
+        public void onComplete() {
+            if(close()) {
+                result.complete(expected.equals(HexFormat.of().formatHex(digest.digest())));
+            }
+        }
+        
+        private boolean close() {
+            try {
+                channel.close();
+                return true;
+            } catch (IOException e) {
+                result.completeExceptionally(e);
+                return false;
+            }
+        }
+    }
+    
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private static void update(MessageDigest digest, FileChannel channel, long length) throws IOException {
+        var buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long position = 0;
+        while(position < length) {
+            buffer.clear().limit((int) Math.min(BUFFER_SIZE, length - position));
+            int read = channel.read(buffer, position);
+            if(read == -1) {
+                throw new IOException("Partial download shrank while resuming");
+            }
+            position += read;
+            digest.update(buffer.flip());
+        }
+    }
+    
+    private static String hash(Algorithm algorithm, Path path) throws IOException {
+        var digest = algorithm.digest();
+        try(var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            update(digest, channel, channel.size());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
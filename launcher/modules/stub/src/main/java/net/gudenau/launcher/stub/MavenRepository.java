@@ -0,0 +1,155 @@
+package net.gudenau.launcher.stub;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Maven repository, either remote or a local directory with a {@code file:} URI.
+ *
+ * Repositories keep track of their own health, see {@link Repositories}. Every request is bounded by the timeout so a
+ * repository that stops answering counts as failed instead of holding up the ones after it.
+ */
+final class MavenRepository {
+    private static final long MIN_BACKOFF = TimeUnit.SECONDS.toNanos(5);
+    private static final long MAX_BACKOFF = TimeUnit.MINUTES.toNanos(5);
+    
+    /**
+     * The health of a failing repository in a form that survives a restart.
+     *
+     * @param failures The failure count
+     * @param retryAt The wall clock time in milliseconds the backoff runs out at
+     */
+    record Health(int failures, long retryAt) {}
+    
+    private final URI root;
+    private final HttpClient client;
+    private final Duration timeout;
+    
+    private int failures;
+    private long retryAt;
+    
+    MavenRepository(@NotNull URI root, @NotNull HttpClient client, @NotNull Duration timeout) {
+        var path = root.toString();
+        this.root = path.endsWith("/") ? root : URI.create(path + '/');
+        this.client = client;
+        this.timeout = timeout;
+    }
+    
+    @NotNull URI root() {
+        return root;
+    }
+    
+    @NotNull URI resolve(@NotNull String path) {
+        return root.resolve(path);
+    }
+    
+    boolean isLocal() {
+        return "file".equals(root.getScheme());
+    }
+    
+    /**
+     * Checks if this repository should be used, a repository that failed recently is skipped until its backoff ran out.
+     */
+    synchronized boolean isAvailable() {
+        return failures == 0 || System.nanoTime() - retryAt >= 0;
+    }
+    
+    /**
+     * Records a successful request.
+     *
+     * @return true if this repository was failing before
+     */
+    synchronized boolean succeeded() {
+        var changed = failures != 0;
+        failures = 0;
+        return changed;
+    }
+    
+    /**
+     * Records a failed request.
+     *
+     * A failure while the backoff is still running comes from a request that was already in flight when an earlier one
+     * failed, it does not count again.
+     */
+    synchronized void failed() {
+        if(!isAvailable()) {
+            return;
+        }
+        failures++;
+        retryAt = System.nanoTime() + Math.min(MIN_BACKOFF << Math.min(failures - 1, 16), MAX_BACKOFF);
+    }
+    
+    /**
+     * Gets the time until this repository is used again.
+     *
+     * @return The remaining backoff in nanoseconds, 0 if the repository is available
+     */
+    synchronized long retryIn() {
+        return isAvailable() ? 0 : retryAt - System.nanoTime();
+    }
+    
+    /**
+     * Gets the health of this repository.
+     *
+     * @return The health or null if the repository is healthy
+     */
+    synchronized @Nullable Health health() {
+        if(failures == 0) {
+            return null;
+        }
+        return new Health(failures, System.currentTimeMillis() + TimeUnit.NANOSECONDS.toMillis(retryAt - System.nanoTime()));
+    }
+    
+    /**
+     * Restores the health of a previous run.
+     */
+    synchronized void health(@NotNull Health health) {
+        failures = health.failures();
+        // Capped in case the clock changed, a backoff never lasts longer than the maximum.
+        var remaining = Math.min(TimeUnit.MILLISECONDS.toNanos(Math.max(0, health.retryAt() - System.currentTimeMillis())), MAX_BACKOFF);
+        retryAt = System.nanoTime() + remaining;
+    }
+    
+    /**
+     * Reads a text file from this repository.
+     *
+     * @param path The path relative to the repository root
+     * @return A future of the contents or empty if the file does not exist
+     */
+    @NotNull CompletableFuture<Optional<String>> read(@NotNull String path) {
+        var uri = resolve(path);
+        if("file".equals(uri.getScheme())) {
+            try {
+                return CompletableFuture.completedFuture(Optional.of(Files.readString(Path.of(uri))));
+            } catch (NoSuchFileException e) {
+                return CompletableFuture.completedFuture(Optional.empty());
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        
+        return client.sendAsync(HttpRequest.newBuilder(uri).timeout(timeout).build(), HttpResponse.BodyHandlers.ofString()).thenCompose((response) -> {
+            var status = response.statusCode();
+            if(status == 200) {
+                return CompletableFuture.completedFuture(Optional.of(response.body()));
+            } else if(status == 404) {
+                return CompletableFuture.completedFuture(Optional.empty());
+            } else {
+                return CompletableFuture.failedFuture(new IOException("Failed to read " + uri + ": HTTP " + status));
+            }
+        });
+    }
+}
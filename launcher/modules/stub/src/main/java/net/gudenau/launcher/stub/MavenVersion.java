@@ -0,0 +1,132 @@
+package net.gudenau.launcher.stub;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A Maven version, ordered close enough to Maven's own rules for picking versions out of a range.
+ *
+ * Versions are split into numbers and qualifiers at dots, dashes and digit/letter transitions. Numbers sort
+ * numerically and above qualifiers, known qualifiers sort as
+ * {@code alpha < beta < milestone < rc < snapshot < release < sp} and unknown ones after that alphabetically.
+ */
+final class MavenVersion implements Comparable<MavenVersion> {
+    private static final int RELEASE = 5;
+    
+    private final String version;
+    private final List<Object> items;
+    
+    private MavenVersion(String version, List<Object> items) {
+        this.version = version;
+        this.items = items;
+    }
+    
+    static @NotNull MavenVersion parse(@NotNull String version) {
+        var items = new ArrayList<Object>();
+        var lower = version.toLowerCase(Locale.ROOT);
+        int start = 0;
+        for(int i = 1; i <= lower.length(); i++) {
+            if(
+                i == lower.length() ||
+                lower.charAt(i) == '.' || lower.charAt(i) == '-' || lower.charAt(i) == '_' ||
+                Character.isDigit(lower.charAt(i)) != Character.isDigit(lower.charAt(i - 1)) && !isSeparator(lower.charAt(i - 1))
+            ) {
+                if(start < i) {
+                    items.add(item(lower.substring(start, i)));
+                }
+                start = isSeparator(i == lower.length() ? '.' : lower.charAt(i)) ? i + 1 : i;
+            }
+        }
+        
+        // 1.0, 1.0.0 and 1-ga are all the same version.
+        while(!items.isEmpty() && compareItem(items.get(items.size() - 1), null) == 0) {
+            items.remove(items.size() - 1);
+        }
+        return new MavenVersion(version, items);
+    }
+    
+    private static boolean isSeparator(char character) {
+        return character == '.' || character == '-' || character == '_';
+    }
+    
+    private static Object item(String token) {
+        if(Character.isDigit(token.charAt(0))) {
+            try {
+                return Long.parseLong(token);
+            } catch (NumberFormatException ignored) {
+                // Too large to be a real version number, sort it as text.
+            }
+        }
+        return token;
+    }
+    
+    private static int rank(String qualifier) {
+        return switch(qualifier) {
+            case "alpha", "a" -> 0;
+            case "beta", "b" -> 1;
+            case "milestone", "m" -> 2;
+            case "rc", "cr" -> 3;
+            case "snapshot" -> 4;
+            case "", "ga", "final", "release" -> RELEASE;
+            case "sp" -> 6;
+            default -> 7;
+        };
+    }
+    
+    // A missing item is treated as 0 or a release qualifier, whichever it is compared against.
+    private static int compareItem(Object a, Object b) {
+        if(a == null && b == null) {
+            return 0;
+        } else if(a == null) {
+            return -compareItem(b, null);
+        } else if(a instanceof Long number) {
+            if(b == null) {
+                return Long.compare(number, 0);
+            }
+            return b instanceof Long other ? Long.compare(number, other) : 1;
+        } else {
+            var qualifier = (String) a;
+            if(b == null) {
+                return Integer.compare(rank(qualifier), RELEASE);
+            } else if(b instanceof Long) {
+                return -1;
+            }
+            var other = (String) b;
+            int result = Integer.compare(rank(qualifier), rank(other));
+            return result != 0 || rank(qualifier) != 7 ? result : qualifier.compareTo(other);
+        }
+    }
+    
+    @Override
+    public int compareTo(@NotNull MavenVersion other) {
+        int length = Math.max(items.size(), other.items.size());
+        for(int i = 0; i < length; i++) {
+            var result = compareItem(
+                i < items.size() ? items.get(i) : null,
+                i < other.items.size() ? other.items.get(i) : null
+            );
+            if(result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+    
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof MavenVersion version && compareTo(version) == 0;
+    }
+    
+    @Override
+    public int hashCode() {
+        return items.hashCode();
+    }
+    
+    @Override
+    public String toString() {
+        return version;
+    }
+}
@@ -0,0 +1,222 @@
+package net.gudenau.launcher.stub;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * The parts of a POM that matter for dependency resolution, exactly as they are written in the file.
+ *
+ * @param coordinate The coordinate, the group and version might come from the parent
+ * @param parent The parent coordinate or null
+ * @param properties The declared properties
+ * @param management The entries of the dependency management section
+ * @param dependencies The dependencies
+ */
+record Pom(
+    @NotNull Coordinate coordinate,
+    @Nullable Coordinate parent,
+    @NotNull Map<String, String> properties,
+    @NotNull List<Dependency> management,
+    @NotNull List<Dependency> dependencies
+) {
+    private static final Pattern PROPERTY = Pattern.compile("\\$\\{([^}]+)}");
+    
+    /**
+     * A single dependency declaration.
+     *
+     * @param group The group id
+     * @param name The artifact id
+     * @param version The version or range, null when it comes from dependency management
+     * @param type The type, {@code jar} unless stated otherwise
+     * @param classifier The classifier or null
+     * @param scope The scope or null
+     * @param optional True if the dependency is optional
+     * @param exclusions The excluded {@code group:name} keys, {@code *} is a wildcard
+     */
+    record Dependency(
+        @NotNull String group,
+        @NotNull String name,
+        @Nullable String version,
+        @NotNull String type,
+        @Nullable String classifier,
+        @Nullable String scope,
+        boolean optional,
+        @NotNull Set<String> exclusions
+    ) {
+        @NotNull String key() {
+            return group + ':' + name;
+        }
+        
+        @NotNull Dependency interpolate(@NotNull Map<String, String> properties) {
+            return new Dependency(
+                Pom.interpolate(group, properties),
+                Pom.interpolate(name, properties),
+                version == null ? null : Pom.interpolate(version, properties),
+                Pom.interpolate(type, properties),
+                classifier == null ? null : Pom.interpolate(classifier, properties),
+                scope == null ? null : Pom.interpolate(scope, properties),
+                optional,
+                exclusions
+            );
+        }
+        
+        @NotNull Dependency withVersion(@NotNull String version) {
+            return new Dependency(group, name, version, type, classifier, scope, optional, exclusions);
+        }
+    }
+    
+    static @NotNull Pom parse(@NotNull String xml) throws IOException {
+        var project = parseXml(xml);
+        
+        var parentElement = child(project, "parent");
+        Coordinate parent = null;
+        if(parentElement != null) {
+            parent = new Coordinate(text(parentElement, "groupId"), text(parentElement, "artifactId"), text(parentElement, "version"));
+        }
+        
+        var group = text(project, "groupId");
+        var version = text(project, "version");
+        var coordinate = new Coordinate(
+            group != null ? group : parent == null ? "" : parent.group(),
+            text(project, "artifactId"),
+            version != null ? version : parent == null ? "" : parent.version()
+        );
+        
+        var properties = new HashMap<String, String>();
+        var propertiesElement = child(project, "properties");
+        if(propertiesElement != null) {
+            for(var property : children(propertiesElement)) {
+                properties.put(property.getTagName(), property.getTextContent().trim());
+            }
+        }
+        
+        var managementElement = child(project, "dependencyManagement");
+        return new Pom(
+            coordinate,
+            parent,
+            properties,
+            dependencies(managementElement == null ? null : child(managementElement, "dependencies")),
+            dependencies(child(project, "dependencies"))
+        );
+    }
+    
+    /**
+     * Reads the available versions out of a {@code maven-metadata.xml} file.
+     */
+    static @NotNull List<String> metadataVersions(@NotNull String xml) throws IOException {
+        var versions = new ArrayList<String>();
+        var versioning = child(parseXml(xml), "versioning");
+        var versionsElement = versioning == null ? null : child(versioning, "versions");
+        if(versionsElement != null) {
+            for(var version : children(versionsElement)) {
+                versions.add(version.getTextContent().trim());
+            }
+        }
+        return versions;
+    }
+    
+    private static Element parseXml(String xml) throws IOException {
+        try {
+            var factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            return factory.newDocumentBuilder().parse(new InputSource(new StringReader(xml))).getDocumentElement();
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Failed to parse XML", e);
+        }
+    }
+    
+    private static List<Dependency> dependencies(@Nullable Element element) {
+        var dependencies = new ArrayList<Dependency>();
+        if(element == null) {
+            return dependencies;
+        }
+        
+        for(var dependency : children(element)) {
+            if(!dependency.getTagName().equals("dependency")) {
+                continue;
+            }
+            
+            var exclusions = new HashSet<String>();
+            var exclusionsElement = child(dependency, "exclusions");
+            if(exclusionsElement != null) {
+                for(var exclusion : children(exclusionsElement)) {
+                    exclusions.add(text(exclusion, "groupId") + ':' + text(exclusion, "artifactId"));
+                }
+            }
+            
+            var type = text(dependency, "type");
+            dependencies.add(new Dependency(
+                text(dependency, "groupId"),
+                text(dependency, "artifactId"),
+                text(dependency, "version"),
+                type == null ? "jar" : type,
+                text(dependency, "classifier"),
+                text(dependency, "scope"),
+                "true".equals(text(dependency, "optional")),
+                Set.copyOf(exclusions)
+            ));
+        }
+        return dependencies;
+    }
+    
+    /**
+     * Replaces {@code ${name}} references, unknown properties are left alone.
+     */
+    static @NotNull String interpolate(@NotNull String value, @NotNull Map<String, String> properties) {
+        for(int depth = 0; depth < 8 && value.contains("${"); depth++) {
+            var matcher = PROPERTY.matcher(value);
+            var result = new StringBuilder();
+            while(matcher.find()) {
+                var replacement = properties.get(matcher.group(1));
+                matcher.appendReplacement(result, replacement == null ? "\\${$1}" : replacement.replace("\\", "\\\\").replace("$", "\\$"));
+            }
+            matcher.appendTail(result);
+            if(result.toString().equals(value)) {
+                break;
+            }
+            value = result.toString();
+        }
+        return value;
+    }
+    
+    private static @Nullable Element child(Element element, String name) {
+        for(var child : children(element)) {
+            if(child.getTagName().equals(name)) {
+                return child;
+            }
+        }
+        return null;
+    }
+    
+    private static List<Element> children(Element element) {
+        var children = new ArrayList<Element>();
+        for(var node = element.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if(node instanceof Element child) {
+                children.add(child);
+            }
+        }
+        return children;
+    }
+    
+    private static @Nullable String text(Element element, String name) {
+        var child = child(element, name);
+        return child == null ? null : child.getTextContent().trim();
+    }
+}
@@ -0,0 +1,325 @@
+package net.gudenau.launcher.stub;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves the transitive runtime dependencies of a set of artifacts from their POMs.
+ *
+ * Parents, properties, dependency management (including imported BOMs), exclusions and version ranges are supported.
+ * Like in Maven the dependency management of a root also applies to everything below it, overriding the versions and
+ * scopes transitive POMs declare. Conflicts are mediated like Maven does it, the declaration closest to the roots wins
+ * and the first one wins between equally close declarations. The result of every resolution is cached on disk keyed by the roots and repositories,
+ * so a launch with the same roots never reads a POM.
+ */
+final class PomResolver {
+    private static final Set<String> SCOPES = Set.of("compile", "runtime");
+    // Part of the cache key, bump it whenever resolution results change.
+    private static final int CACHE_VERSION = 2;
+    
+    /**
+     * A POM with its parents, imports and properties applied.
+     */
+    private record Model(
+        @NotNull Coordinate coordinate,
+        @NotNull Map<String, String> properties,
+        @NotNull Map<String, Pom.Dependency> management,
+        @NotNull List<Pom.Dependency> dependencies
+    ) {}
+    
+    /**
+     * A coordinate to resolve.
+     *
+     * @param management The dependency management of the root this was reached from, null for the roots themselves
+     */
+    private record Request(
+        @NotNull Coordinate coordinate,
+        @NotNull Set<String> exclusions,
+        @Nullable Map<String, Pom.Dependency> management
+    ) {}
+    
+    private final Repositories repositories;
+    private final Path cache;
+    private final Map<String, CompletableFuture<Model>> models = new ConcurrentHashMap<>();
+    
+    /**
+     * @param repositories The repositories to search
+     * @param cache The directory resolutions are cached in
+     */
+    PomResolver(@NotNull Repositories repositories, @NotNull Path cache) {
+        this.repositories = repositories;
+        this.cache = cache;
+    }
+    
+    /**
+     * Resolves the roots and all of their compile and runtime dependencies.
+     *
+     * @param roots The roots, in order of precedence
+     * @return The resolved artifacts, roots first
+     */
+    @NotNull List<Coordinate> resolve(@NotNull List<Coordinate> roots) throws IOException {
+        var cached = cache.resolve(key(roots) + ".txt");
+        if(Files.isRegularFile(cached)) {
+            var coordinates = new ArrayList<Coordinate>();
+            for(var line : Files.readAllLines(cached, StandardCharsets.UTF_8)) {
+                if(!line.isBlank()) {
+                    coordinates.add(Coordinate.parse(line.trim()));
+                }
+            }
+            return coordinates;
+        }
+        
+        List<Coordinate> resolved;
+        try {
+            resolved = resolveNow(roots);
+        } catch (CompletionException e) {
+            if(e.getCause() instanceof UncheckedIOException exception) {
+                throw exception.getCause();
+            } else if(e.getCause() instanceof IOException exception) {
+                throw exception;
+            }
+            throw e;
+        }
+        
+        Files.createDirectories(cache);
+        var temp = cached.resolveSibling(cached.getFileName() + ".tmp");
+        var lines = new ArrayList<String>();
+        for(var coordinate : resolved) {
+            lines.add(coordinate.toString());
+        }
+        Files.write(temp, lines, StandardCharsets.UTF_8);
+        Files.move(temp, cached, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return resolved;
+    }
+    
+    private String key(List<Coordinate> roots) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("Missing required digest SHA-256", e);
+        }
+        digest.update((CACHE_VERSION + "\n").getBytes(StandardCharsets.UTF_8));
+        for(var root : roots) {
+            digest.update((root + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        // Every configured repository, offline mode has to find the resolutions of online runs.
+        for(var repository : repositories.all()) {
+            digest.update((repository.root() + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+    
+    // Breadth first, so the first time a key shows up is also the closest declaration of it.
+    private List<Coordinate> resolveNow(List<Coordinate> roots) {
+        var resolved = new LinkedHashMap<String, Coordinate>();
+        var seen = new HashSet<String>();
+        var level = new ArrayList<Request>();
+        for(var root : roots) {
+            level.add(new Request(root, Set.of(), null));
+        }
+        
+        while(!level.isEmpty()) {
+            var requests = new ArrayList<Request>();
+            var futures = new ArrayList<CompletableFuture<Model>>();
+            for(var request : level) {
+                if(seen.add(request.coordinate().key())) {
+                    requests.add(request);
+                    futures.add(selectVersion(request.coordinate()).thenCompose(this::model));
+                }
+            }
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+            
+            var next = new ArrayList<Request>();
+            for(int i = 0; i < requests.size(); i++) {
+                var request = requests.get(i);
+                var model = futures.get(i).join();
+                resolved.put(request.coordinate().key(), model.coordinate());
+                
+                // A root already applied its own management to what it declares.
+                var management = request.management() == null ? model.management() : request.management();
+                for(var declared : model.dependencies()) {
+                    var dependency = request.management() == null ? declared : manage(declared, management);
+                    if(
+                        dependency.optional() ||
+                        !SCOPES.contains(dependency.scope() == null ? "compile" : dependency.scope()) ||
+                        !dependency.type().equals("jar") ||
+                        dependency.classifier() != null ||
+                        isExcluded(dependency, request.exclusions())
+                    ) {
+                        continue;
+                    }
+                    if(dependency.version() == null) {
+                        throw new UncheckedIOException(new IOException("No version for " + dependency.key() + " in " + model.coordinate()));
+                    }
+                    
+                    var exclusions = new HashSet<>(request.exclusions());
+                    exclusions.addAll(dependency.exclusions());
+                    next.add(new Request(new Coordinate(dependency.group(), dependency.name(), dependency.version()), Set.copyOf(exclusions), management));
+                }
+            }
+            level = next;
+        }
+        return List.copyOf(resolved.values());
+    }
+    
+    private static Pom.Dependency manage(Pom.Dependency dependency, Map<String, Pom.Dependency> management) {
+        var managed = management.get(dependency.key());
+        if(managed == null) {
+            return dependency;
+        }
+        
+        var exclusions = new HashSet<>(dependency.exclusions());
+        exclusions.addAll(managed.exclusions());
+        return new Pom.Dependency(
+            dependency.group(), dependency.name(),
+            managed.version() == null ? dependency.version() : managed.version(),
+            dependency.type(), dependency.classifier(),
+            managed.scope() == null ? dependency.scope() : managed.scope(),
+            dependency.optional(), Set.copyOf(exclusions)
+        );
+    }
+    
+    private static boolean isExcluded(Pom.Dependency dependency, Set<String> exclusions) {
+        return exclusions.contains(dependency.key()) ||
+            exclusions.contains("*:" + dependency.name()) ||
+            exclusions.contains(dependency.group() + ":*") ||
+            exclusions.contains("*:*");
+    }
+    
+    private CompletableFuture<Coordinate> selectVersion(Coordinate coordinate) {
+        var range = VersionRange.parse(coordinate.version());
+        if(!range.isRange()) {
+            return CompletableFuture.completedFuture(coordinate);
+        }
+        
+        var path = coordinate.group().replace('.', '/') + '/' + coordinate.name() + "/maven-metadata.xml";
+        return repositories.readAll(path).thenApply((metadata) -> {
+            var versions = new ArrayList<String>();
+            try {
+                for(var contents : metadata) {
+                    versions.addAll(Pom.metadataVersions(contents));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            
+            var version = range.select(versions);
+            if(version == null) {
+                throw new UncheckedIOException(new FileNotFoundException("No version of " + coordinate.key() + " matches " + range));
+            }
+            return new Coordinate(coordinate.group(), coordinate.name(), version);
+        });
+    }
+    
+    private CompletableFuture<Model> model(Coordinate coordinate) {
+        var existing = models.get(coordinate.toString());
+        if(existing != null) {
+            return existing;
+        }
+        // Not computeIfAbsent, building a model recursively loads parents and imports.
+        var future = readPom(coordinate).thenCompose(this::model);
+        existing = models.putIfAbsent(coordinate.toString(), future);
+        return existing != null ? existing : future;
+    }
+    
+    private CompletableFuture<Pom> readPom(Coordinate coordinate) {
+        return repositories.read(coordinate.path("pom")).thenCompose((pom) -> {
+            if(pom.isEmpty()) {
+                return CompletableFuture.failedFuture(new FileNotFoundException("Failed to find POM for " + coordinate));
+            }
+            try {
+                return CompletableFuture.completedFuture(Pom.parse(pom.get()));
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(new IOException("Failed to parse POM for " + coordinate, e));
+            }
+        });
+    }
+    
+    private CompletableFuture<Model> model(Pom pom) {
+        var parent = pom.parent() == null ?
+            CompletableFuture.<Optional<Model>>completedFuture(Optional.empty()) :
+            model(pom.parent()).thenApply(Optional::of);
+        
+        return parent.thenCompose((parentModel) -> {
+            var properties = new HashMap<String, String>();
+            parentModel.ifPresent((model) -> properties.putAll(model.properties()));
+            properties.putAll(pom.properties());
+            var coordinate = pom.coordinate();
+            for(var prefix : List.of("project.", "pom.", "")) {
+                properties.put(prefix + "groupId", coordinate.group());
+                properties.put(prefix + "artifactId", coordinate.name());
+                properties.put(prefix + "version", coordinate.version());
+            }
+            if(pom.parent() != null) {
+                properties.put("project.parent.groupId", pom.parent().group());
+                properties.put("project.parent.version", pom.parent().version());
+            }
+            var interpolated = new Coordinate(
+                Pom.interpolate(coordinate.group(), properties),
+                coordinate.name(),
+                Pom.interpolate(coordinate.version(), properties)
+            );
+            
+            // Declared entries win over imported ones, which win over inherited ones.
+            var management = new LinkedHashMap<String, Pom.Dependency>();
+            var imports = new ArrayList<CompletableFuture<Model>>();
+            for(var entry : pom.management()) {
+                var dependency = entry.interpolate(properties);
+                if("import".equals(dependency.scope()) && "pom".equals(dependency.type()) && dependency.version() != null) {
+                    imports.add(model(new Coordinate(dependency.group(), dependency.name(), dependency.version())));
+                } else {
+                    management.put(dependency.key(), dependency);
+                }
+            }
+            
+            return CompletableFuture.allOf(imports.toArray(CompletableFuture[]::new)).thenApply((ignored) -> {
+                for(var imported : imports) {
+                    imported.join().management().forEach(management::putIfAbsent);
+                }
+                parentModel.ifPresent((model) -> model.management().forEach(management::putIfAbsent));
+                
+                var dependencies = new LinkedHashMap<String, Pom.Dependency>();
+                parentModel.ifPresent((model) -> model.dependencies().forEach((dependency) -> dependencies.put(dependency.key(), dependency)));
+                for(var declared : pom.dependencies()) {
+                    var dependency = declared.interpolate(properties);
+                    var managed = management.get(dependency.key());
+                    if(managed != null && dependency.version() == null && managed.version() != null) {
+                        dependency = dependency.withVersion(managed.version());
+                    }
+                    if(managed != null && dependency.scope() == null && managed.scope() != null) {
+                        dependency = new Pom.Dependency(
+                            dependency.group(), dependency.name(), dependency.version(), dependency.type(),
+                            dependency.classifier(), managed.scope(), dependency.optional(), dependency.exclusions()
+                        );
+                    }
+                    dependencies.put(dependency.key(), dependency);
+                }
+                
+                return new Model(interpolated, Map.copyOf(properties), management, List.copyOf(dependencies.values()));
+            });
+        });
+    }
+}
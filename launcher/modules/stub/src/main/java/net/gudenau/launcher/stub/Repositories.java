@@ -0,0 +1,235 @@
+package net.gudenau.launcher.stub;
+
+import net.gudenau.launcher.stub.DownloadScheduler.Priority;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * The repositories to fetch from, in order of preference.
+ *
+ * A repository that fails with anything but a missing file is skipped for a while, so a dead mirror costs one failure
+ * instead of one per artifact. Downloads try every usable repository once before backing off, a failed mirror is only
+ * tried again once its own backoff ran out. The health of every repository is kept in a file, so a mirror that was dead
+ * last time is not tried again until its backoff ran out. In offline mode only repositories on the local file system are used,
+ * nothing ever touches the network.
+ */
+final class Repositories {
+    private final List<MavenRepository> repositories;
+    private final boolean offline;
+    private final Path state;
+    
+    /**
+     * @param repositories The repositories, in order of preference
+     * @param offline True to only use local repositories
+     * @param state The file the health of the repositories is kept in
+     */
+    Repositories(@NotNull List<MavenRepository> repositories, boolean offline, @NotNull Path state) {
+        this.repositories = List.copyOf(repositories);
+        this.offline = offline;
+        this.state = state;
+        load();
+    }
+    
+    /**
+     * Gets every configured repository, including the ones that are currently skipped.
+     */
+    @NotNull List<MavenRepository> all() {
+        return repositories;
+    }
+    
+    boolean isOffline() {
+        return offline;
+    }
+    
+    /**
+     * Reads a text file from the first repository that has it.
+     *
+     * @param path The path relative to the repository roots
+     * @return A future of the contents or empty if no repository has the file
+     */
+    @NotNull CompletableFuture<Optional<String>> read(@NotNull String path) {
+        return first(path, (repository) -> repository.read(path).thenApply((contents) -> {
+            if(contents.isEmpty()) {
+                throw new UncheckedIOException(new FileNotFoundException(path));
+            }
+            return contents;
+        })).exceptionallyCompose((exception) -> {
+            var cause = unwrap(exception);
+            return cause instanceof FileNotFoundException ?
+                CompletableFuture.completedFuture(Optional.empty()) :
+                CompletableFuture.failedFuture(cause);
+        });
+    }
+    
+    /**
+     * Reads a text file from every usable repository, repositories that fail are left out.
+     *
+     * @param path The path relative to the repository roots
+     * @return A future of every copy of the file that was found
+     */
+    @NotNull CompletableFuture<List<String>> readAll(@NotNull String path) {
+        var reads = new ArrayList<CompletableFuture<Optional<String>>>();
+        for(var repository : repositories) {
+            if(isUsable(repository)) {
+                reads.add(track(repository, repository.read(path)).exceptionally((exception) -> Optional.empty()));
+            }
+        }
+        return CompletableFuture.allOf(reads.toArray(CompletableFuture[]::new)).thenApply((ignored) -> reads.stream()
+            .map(CompletableFuture::join)
+            .flatMap(Optional::stream)
+            .toList()
+        );
+    }
+    
+    /**
+     * Downloads a file from the first repository that has it.
+     *
+     * @param scheduler The scheduler to download with
+     * @param path The path relative to the repository roots
+     * @param target The local file
+     * @param priority The priority of the download
+     * @return A future of the target
+     */
+    @NotNull CompletableFuture<Path> download(@NotNull DownloadScheduler scheduler, @NotNull String path, @NotNull Path target, @NotNull Priority priority) {
+        return download(scheduler, path, target, priority, 1, null);
+    }
+    
+    // Every attempt is a single request per repository, so a failure counts against the repository right away and the
+    // next one is tried before backing off. The usability check in first runs again for every round.
+    private CompletableFuture<Path> download(DownloadScheduler scheduler, String path, Path target, Priority priority, int attempt, Throwable failure) {
+        return first(path, (repository) -> scheduler.submit(repository.resolve(path), target, priority, 1), 0, failure).exceptionallyCompose((exception) -> {
+            // A file that is missing from every usable repository might still be on one that is backing off.
+            var cause = unwrap(exception);
+            var retryIn = retryIn();
+            if(attempt >= scheduler.maxAttempts() || (cause instanceof FileNotFoundException && retryIn == 0)) {
+                return CompletableFuture.failedFuture(cause);
+            }
+            
+            var delay = Math.max(scheduler.retryDelay(attempt), TimeUnit.NANOSECONDS.toMillis(retryIn));
+            return CompletableFuture.supplyAsync(() -> null, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                .thenCompose((ignored) -> download(scheduler, path, target, priority, attempt + 1, cause));
+        });
+    }
+    
+    private <T> CompletableFuture<T> first(String path, Function<MavenRepository, CompletableFuture<T>> action) {
+        return first(path, action, 0, null);
+    }
+    
+    // Missing files move on to the next repository, other failures are kept so the caller sees why nothing worked.
+    private <T> CompletableFuture<T> first(String path, Function<MavenRepository, CompletableFuture<T>> action, int index, Throwable failure) {
+        if(index >= repositories.size()) {
+            if(failure != null) {
+                return CompletableFuture.failedFuture(failure);
+            }
+            return CompletableFuture.failedFuture(new FileNotFoundException(
+                offline ? "Offline and no local repository has " + path : "No repository has " + path
+            ));
+        }
+        
+        var repository = repositories.get(index);
+        if(!isUsable(repository)) {
+            return first(path, action, index + 1, failure);
+        }
+        return track(repository, action.apply(repository)).exceptionallyCompose((exception) -> {
+            var cause = unwrap(exception);
+            return first(path, action, index + 1, cause instanceof FileNotFoundException ? failure : cause);
+        });
+    }
+    
+    private boolean isUsable(MavenRepository repository) {
+        return offline ? repository.isLocal() : repository.isAvailable();
+    }
+    
+    // The time until the first repository that is backing off can be used again, 0 if none is.
+    private long retryIn() {
+        if(offline) {
+            return 0;
+        }
+        var remaining = Long.MAX_VALUE;
+        for(var repository : repositories) {
+            var time = repository.retryIn();
+            if(time > 0) {
+                remaining = Math.min(remaining, time);
+            }
+        }
+        return remaining == Long.MAX_VALUE ? 0 : remaining;
+    }
+    
+    private <T> CompletableFuture<T> track(MavenRepository repository, CompletableFuture<T> future) {
+        return future.whenComplete((result, exception) -> {
+            if(exception == null || unwrap(exception) instanceof FileNotFoundException) {
+                if(repository.succeeded()) {
+                    save();
+                }
+            } else {
+                repository.failed();
+                save();
+            }
+        });
+    }
+    
+    // The health is only a hint, a missing or broken file means every repository starts out healthy.
+    private void load() {
+        if(!Files.isRegularFile(state)) {
+            return;
+        }
+        var properties = new Properties();
+        try(var reader = Files.newBufferedReader(state)) {
+            properties.load(reader);
+        } catch (IOException | IllegalArgumentException e) {
+            return;
+        }
+        for(var repository : repositories) {
+            var value = properties.getProperty(repository.root().toString());
+            if(value == null) {
+                continue;
+            }
+            try {
+                var fields = value.split(" ");
+                repository.health(new MavenRepository.Health(Integer.parseInt(fields[0]), Long.parseLong(fields[1])));
+            } catch (RuntimeException ignored) {
+            }
+        }
+    }
+    
+    private synchronized void save() {
+        var properties = new Properties();
+        for(var repository : repositories) {
+            var health = repository.health();
+            if(health != null) {
+                properties.setProperty(repository.root().toString(), health.failures() + " " + health.retryAt());
+            }
+        }
+        try {
+            Files.createDirectories(state.toAbsolutePath().getParent());
+            var temp = state.resolveSibling(state.getFileName() + ".tmp");
+            try(var writer = Files.newBufferedWriter(temp)) {
+                properties.store(writer, "Repository failures and the time their backoff runs out");
+            }
+            Files.move(temp, state, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ignored) {
+            // Only costs a retry of a dead repository next time.
+        }
+    }
+    
+    private static Throwable unwrap(Throwable exception) {
+        while((exception instanceof CompletionException || exception instanceof UncheckedIOException) && exception.getCause() != null) {
+            exception = exception.getCause();
+        }
+        return exception;
+    }
+}
@@ -1,30 +1,48 @@
 package net.gudenau.launcher.stub;
 
+import net.gudenau.launcher.boot.ModuleCache;
+import net.gudenau.launcher.stub.DownloadScheduler.Priority;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
 import java.lang.module.ModuleFinder;
 import java.net.URI;
 import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 public class Stub {
-    private static final Set<Dependency> DEPENDENCIES = Set.of(
-        new Dependency(Source.MAVEN_CENTRAL, "org.ow2.asm", "asm", "9.3"),
-        new Dependency(Source.MAVEN_CENTRAL, "org.ow2.asm", "asm-tree", "9.3"),
-        new Dependency(Source.MAVEN_CENTRAL, "com.google.code.gson", "gson", "2.9.1"),
-        new Dependency(Source.MAVEN_CENTRAL, "it.unimi.dsi", "fastutil", "8.5.9")
+    // Only the direct dependencies of the launcher, everything else is resolved from their POMs.
+    private static final List<Coordinate> DEPENDENCIES = List.of(
+        new Coordinate("org.ow2.asm", "asm", "9.3"),
+        new Coordinate("org.ow2.asm", "asm-tree", "9.3"),
+        new Coordinate("com.google.code.gson", "gson", "2.9.1"),
+        new Coordinate("it.unimi.dsi", "fastutil", "8.5.9")
     );
     
     private static final Path LIBRARY_PATH = Path.of(".", "libraries");
+    private static final Path PLUGIN_PATH = Path.of(".", "plugins");
+    
+    private static final int DOWNLOADS_PER_HOST = Integer.getInteger("launcher.downloadsPerHost", 6);
+    private static final int DOWNLOAD_ATTEMPTS = Integer.getInteger("launcher.downloadAttempts", 4);
+    private static final Duration DOWNLOAD_BACKOFF = Duration.ofMillis(250);
+    private static final Duration CONNECT_TIMEOUT = Duration.ofMillis(Integer.getInteger("launcher.connectTimeoutMs", 5000));
+    private static final Duration REQUEST_TIMEOUT = Duration.ofMillis(Integer.getInteger("launcher.requestTimeoutMs", 10000));
+    
+    // Only the artifact store and local mirrors, for machines with a slow or no network.
+    private static final boolean OFFLINE = Boolean.getBoolean("launcher.offline");
     
     public static void main(String[] args) {
         init(-1, -1);
@@ -32,16 +50,32 @@ public class Stub {
     
     public static void init(int readPipe, int writePipe) {
         try {
+            // Kept off the common pool, hashing and file writes block.
+            var executor = Executors.newCachedThreadPool((runnable) -> {
+                var thread = new Thread(runnable, "Downloader");
+                thread.setDaemon(true);
+                return thread;
+            });
             HttpClient client = HttpClient.newBuilder()
                 .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .executor(executor)
                 .build();
+            var scheduler = new DownloadScheduler(new Downloader(client, executor, REQUEST_TIMEOUT), executor, DOWNLOADS_PER_HOST, DOWNLOAD_ATTEMPTS, DOWNLOAD_BACKOFF);
+            var store = new ArtifactStore(LIBRARY_PATH);
+            var repositories = new Repositories(Arrays.stream(Source.values())
+                .flatMap((source) -> source.uri().stream())
+                .map((uri) -> new MavenRepository(uri, client, REQUEST_TIMEOUT))
+                .toList(), OFFLINE, LIBRARY_PATH.resolve("repositories.properties"));
+            var resolver = new PomResolver(repositories, LIBRARY_PATH.resolve("resolutions"));
             
             Set<Path> classPath = new HashSet<>();
-            CompletableFuture.allOf(DEPENDENCIES.stream()
-                .map((dependency) -> CompletableFuture.supplyAsync(() -> downloadDependency(client, dependency)))
-                .map((future) -> future.thenAccept((paths) -> {
+            CompletableFuture.allOf(resolver.resolve(DEPENDENCIES).stream()
+                .map((dependency) -> downloadDependency(scheduler, store, executor, repositories, dependency))
+                .map((future) -> future.thenAccept((path) -> {
                     synchronized (classPath) {
-                        classPath.addAll(paths);
+                        classPath.add(path);
                     }
                 }))
                 .toArray(CompletableFuture[]::new)
@@ -50,7 +84,10 @@ public class Stub {
             //FIXME
             classPath.add(Path.of("/home/gudenau/projects/cpp/GameLauncher/launcher/build/libs/launcher-1.0.0.jar"));
             
-            var finder = ModuleFinder.of(classPath.toArray(Path[]::new));
+            ClassDataSharing.update(classPath, PLUGIN_PATH);
+            
+            // Warm starts rebuild the module graph from the cache instead of opening every jar.
+            var finder = ModuleCache.finder(ModuleCache.load(LIBRARY_PATH.resolve("modules.bin"), classPath));
             var parent = ModuleLayer.boot();
             var configuration = parent.configuration().resolve(finder, ModuleFinder.of(), Set.of("launcher"));
             var loader = ClassLoader.getSystemClassLoader();
@@ -69,45 +106,58 @@ public class Stub {
         }
     }
     
-    private static Set<Path> downloadDependency(HttpClient client, @NotNull Dependency dependency) {
-        var path = LIBRARY_PATH;
-        for (var segment : dependency.group().split("\\.")) {
-            path = path.resolve(segment);
-        }
-        path = path.resolve(Path.of(dependency.name(), dependency.version(), dependency.name() + '-' + dependency.version() + ".jar"));
+    private static CompletableFuture<Path> downloadDependency(DownloadScheduler scheduler, ArtifactStore store, Executor executor, Repositories repositories, @NotNull Coordinate dependency) {
+        var path = LIBRARY_PATH.resolve(dependency.path("jar"));
+        var coordinate = dependency.toString();
         
-        if(Files.exists(path)) {
-            return Set.of(path);
+        // Stored artifacts were verified when they were added, no need to hash them again.
+        var blob = store.find(coordinate);
+        if(blob.isPresent()) {
+            try {
+                return CompletableFuture.completedFuture(store.materialize(blob.get(), path));
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
         }
         
-        var url = dependency.source().url + '/' + dependency.group.replaceAll("\\.", "/") + '/' + dependency.name() + '/' + dependency.version() + '/' + dependency.name() + '-' + dependency.version() + ".jar";
-        var request = HttpRequest.newBuilder(URI.create(url))
-            .build();
-        try {
-            Files.createDirectories(path.getParent());
-            client.send(request, HttpResponse.BodyHandlers.ofFile(path));
-        } catch (IOException | InterruptedException e) {
-            throw new RuntimeException(e);
-        }
-    
-        return Set.of(path);
+        // Everything the stub resolves is needed to boot the launcher.
+        return repositories.download(scheduler, dependency.path("jar"), path, Priority.CRITICAL).thenApplyAsync((downloaded) -> {
+            try {
+                return store.add(coordinate, downloaded);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
     }
     
+    /**
+     * The repositories in order of preference. Every one can be moved with its system property or disabled by setting
+     * it to nothing, the local mirror is only used when its directory exists.
+     */
     private enum Source {
-        MAVEN_CENTRAL("https://repo1.maven.org/maven2"),
+        LOCAL("launcher.mirror.local", "mirror"),
+        NEXUS("launcher.mirror.nexus", ""),
+        MAVEN_CENTRAL("launcher.mirror.central", "https://repo1.maven.org/maven2"),
         ;
         
+        private final String property;
         private final String url;
         
-        Source(String url) {
+        Source(String property, String url) {
+            this.property = property;
             this.url = url;
         }
+        
+        Optional<URI> uri() {
+            var value = System.getProperty(property, url);
+            if(value.isBlank()) {
+                return Optional.empty();
+            } else if(value.contains("://")) {
+                return Optional.of(URI.create(value));
+            }
+            
+            var path = Path.of(value);
+            return Files.isDirectory(path) ? Optional.of(path.toAbsolutePath().normalize().toUri()) : Optional.empty();
+        }
     }
-    
-    private record Dependency(
-        @NotNull Source source,
-        @NotNull String group,
-        @NotNull String name,
-        @NotNull String version
-    ){}
 }
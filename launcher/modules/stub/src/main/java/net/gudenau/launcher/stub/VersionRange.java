@@ -0,0 +1,131 @@
+package net.gudenau.launcher.stub;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Maven version requirement, either a soft version like {@code 1.0} or a set of ranges like
+ * {@code [1.0,2.0),[3.0,)}.
+ */
+final class VersionRange {
+    private record Restriction(
+        @Nullable MavenVersion lower,
+        boolean lowerInclusive,
+        @Nullable MavenVersion upper,
+        boolean upperInclusive
+    ) {
+        boolean contains(MavenVersion version) {
+            if(lower != null) {
+                int result = version.compareTo(lower);
+                if(result < 0 || result == 0 && !lowerInclusive) {
+                    return false;
+                }
+            }
+            if(upper != null) {
+                int result = version.compareTo(upper);
+                return result < 0 || result == 0 && upperInclusive;
+            }
+            return true;
+        }
+    }
+    
+    private final String specification;
+    private final List<Restriction> restrictions;
+    
+    private VersionRange(String specification, List<Restriction> restrictions) {
+        this.specification = specification;
+        this.restrictions = restrictions;
+    }
+    
+    static @NotNull VersionRange parse(@NotNull String specification) {
+        var restrictions = new ArrayList<Restriction>();
+        var remaining = specification.trim();
+        while(remaining.startsWith("[") || remaining.startsWith("(")) {
+            int end = indexOfClose(remaining);
+            if(end == -1) {
+                throw new IllegalArgumentException("Unbalanced version range: " + specification);
+            }
+            restrictions.add(restriction(remaining.substring(0, end + 1), specification));
+            remaining = remaining.substring(end + 1).trim();
+            if(remaining.startsWith(",")) {
+                remaining = remaining.substring(1).trim();
+            }
+        }
+        if(!remaining.isEmpty() && !restrictions.isEmpty()) {
+            throw new IllegalArgumentException("Invalid version range: " + specification);
+        }
+        return new VersionRange(specification, restrictions);
+    }
+    
+    private static int indexOfClose(String range) {
+        int square = range.indexOf(']');
+        int round = range.indexOf(')');
+        return square == -1 ? round : round == -1 ? square : Math.min(square, round);
+    }
+    
+    private static Restriction restriction(String range, String specification) {
+        var lowerInclusive = range.charAt(0) == '[';
+        var upperInclusive = range.charAt(range.length() - 1) == ']';
+        var body = range.substring(1, range.length() - 1);
+        int comma = body.indexOf(',');
+        if(comma == -1) {
+            if(!lowerInclusive || !upperInclusive || body.isBlank()) {
+                throw new IllegalArgumentException("Invalid version range: " + specification);
+            }
+            var version = MavenVersion.parse(body.trim());
+            return new Restriction(version, true, version, true);
+        }
+        var lower = body.substring(0, comma).trim();
+        var upper = body.substring(comma + 1).trim();
+        return new Restriction(
+            lower.isEmpty() ? null : MavenVersion.parse(lower),
+            lowerInclusive,
+            upper.isEmpty() ? null : MavenVersion.parse(upper),
+            upperInclusive
+        );
+    }
+    
+    /**
+     * Checks if this is an actual range, soft versions are just recommendations that mediation can override.
+     */
+    boolean isRange() {
+        return !restrictions.isEmpty();
+    }
+    
+    boolean contains(@NotNull MavenVersion version) {
+        if(!isRange()) {
+            return version.equals(MavenVersion.parse(specification));
+        }
+        for(var restriction : restrictions) {
+            if(restriction.contains(version)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Picks the newest version that satisfies this range.
+     *
+     * @param versions The available versions
+     * @return The chosen version or null if none match
+     */
+    @Nullable String select(@NotNull List<String> versions) {
+        MavenVersion best = null;
+        for(var candidate : versions) {
+            var version = MavenVersion.parse(candidate);
+            if(contains(version) && (best == null || version.compareTo(best) > 0)) {
+                best = version;
+            }
+        }
+        return best == null ? null : best.toString();
+    }
+    
+    @Override
+    public String toString() {
+        return specification;
+    }
+}
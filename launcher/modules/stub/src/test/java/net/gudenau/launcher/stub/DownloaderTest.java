@@ -0,0 +1,261 @@
+package net.gudenau.launcher.stub;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DownloaderTest {
+    private static final byte[] JAR = new byte[200 * 1024];
+    
+    static {
+        new Random(0x6A6172).nextBytes(JAR);
+    }
+    
+    @TempDir
+    Path directory;
+    
+    private final Map<String, byte[]> files = new HashMap<>();
+    private final Map<String, Integer> statuses = new HashMap<>();
+    private final Set<String> stalled = new HashSet<>();
+    private final List<String> ranges = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch release = new CountDownLatch(1);
+    private HttpServer server;
+    private ExecutorService executor;
+    private Downloader downloader;
+    
+    @BeforeEach
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::serve);
+        server.createContext("/stall", (exchange) -> {
+            await();
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        
+        executor = Executors.newCachedThreadPool();
+        var client = HttpClient.newBuilder().executor(executor).build();
+        downloader = new Downloader(client, executor, Duration.ofMillis(500));
+    }
+    
+    @AfterEach
+    void stop() {
+        release.countDown();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+    
+    private void serve(HttpExchange exchange) throws IOException {
+        try(exchange) {
+            var status = statuses.get(exchange.getRequestURI().getPath());
+            if(status != null) {
+                exchange.sendResponseHeaders(status, -1);
+                return;
+            }
+            
+            var data = files.get(exchange.getRequestURI().getPath());
+            if(data == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            
+            var range = exchange.getRequestHeaders().getFirst("Range");
+            int start = 0;
+            if(range != null) {
+                ranges.add(range);
+                start = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+                exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + (data.length - 1) + "/" + data.length);
+                exchange.sendResponseHeaders(206, data.length - start);
+            } else {
+                exchange.sendResponseHeaders(200, data.length);
+            }
+            if(stalled.contains(exchange.getRequestURI().getPath())) {
+                // Send half of the body and then nothing until the test ends.
+                exchange.getResponseBody().write(data, start, (data.length - start) / 2);
+                exchange.getResponseBody().flush();
+                await();
+                return;
+            }
+            exchange.getResponseBody().write(data, start, data.length - start);
+        }
+    }
+    
+    private void await() {
+        try {
+            release.await();
+        } catch (InterruptedException ignored) {
+        }
+    }
+    
+    private URI publish(String path, byte[] data, String hash) {
+        files.put(path, data);
+        files.put(path + ".sha256", hash.getBytes(StandardCharsets.UTF_8));
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + path);
+    }
+    
+    private static String sha256(byte[] data) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+    }
+    
+    private static Throwable failure(Runnable action) {
+        Throwable exception = assertThrows(CompletionException.class, action::run);
+        while((exception instanceof CompletionException || exception instanceof UncheckedIOException) && exception.getCause() != null) {
+            exception = exception.getCause();
+        }
+        return exception;
+    }
+    
+    @Test
+    void resumesPartialDownload() throws Exception {
+        var uri = publish("/lib.jar", JAR, sha256(JAR));
+        var target = directory.resolve("lib.jar");
+        Files.write(directory.resolve("lib.jar.part"), Arrays.copyOf(JAR, 70_000));
+        
+        assertEquals(target, downloader.download(uri, target).join());
+        assertArrayEquals(JAR, Files.readAllBytes(target));
+        assertEquals(List.of("bytes=70000-"), ranges);
+        assertFalse(Files.exists(directory.resolve("lib.jar.part")));
+    }
+    
+    @Test
+    void restartsCorruptPartialDownload() throws Exception {
+        var uri = publish("/lib.jar", JAR, sha256(JAR));
+        var target = directory.resolve("lib.jar");
+        var corrupt = Arrays.copyOf(JAR, 70_000);
+        corrupt[10] ^= 1;
+        Files.write(directory.resolve("lib.jar.part"), corrupt);
+        
+        downloader.download(uri, target).join();
+        assertArrayEquals(JAR, Files.readAllBytes(target));
+        assertEquals(List.of("bytes=70000-"), ranges);
+    }
+    
+    @Test
+    void rejectsChecksumMismatch() throws Exception {
+        var uri = publish("/lib.jar", JAR, sha256(new byte[]{1, 2, 3}));
+        var target = directory.resolve("lib.jar");
+        
+        var cause = failure(() -> downloader.download(uri, target).join());
+        assertInstanceOf(IOException.class, cause);
+        assertTrue(cause.getMessage().startsWith("Checksum mismatch"), cause.getMessage());
+        assertFalse(Files.exists(target));
+        assertFalse(Files.exists(directory.resolve("lib.jar.part")));
+        assertFalse(Files.exists(directory.resolve("lib.jar.sha256")));
+    }
+    
+    @Test
+    void fallsBackToMissingChecksum() throws Exception {
+        var uri = publish("/lib.jar", JAR, sha256(JAR));
+        files.remove("/lib.jar.sha256");
+        files.put("/lib.jar.sha1", HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(JAR)).getBytes(StandardCharsets.UTF_8));
+        var target = directory.resolve("lib.jar");
+        
+        downloader.download(uri, target).join();
+        assertArrayEquals(JAR, Files.readAllBytes(target));
+    }
+    
+    @Test
+    void reportsChecksumServerError() throws Exception {
+        var uri = publish("/lib.jar", JAR, sha256(JAR));
+        statuses.put("/lib.jar.sha256", 503);
+        var target = directory.resolve("lib.jar");
+        
+        // A missing file is final, a server error has to stay retryable.
+        var cause = failure(() -> downloader.download(uri, target).join());
+        assertInstanceOf(IOException.class, cause);
+        assertFalse(cause instanceof FileNotFoundException);
+        assertFalse(Files.exists(target));
+    }
+    
+    @Test
+    void keepsOldFileUntilVerified() throws Exception {
+        var target = directory.resolve("lib.jar");
+        var old = "old".getBytes(StandardCharsets.UTF_8);
+        Files.write(target, old);
+        
+        var bad = publish("/bad.jar", JAR, sha256(old));
+        failure(() -> downloader.download(bad, target).join());
+        assertArrayEquals(old, Files.readAllBytes(target));
+        
+        var good = publish("/good.jar", JAR, sha256(JAR));
+        downloader.download(good, target).join();
+        assertArrayEquals(JAR, Files.readAllBytes(target));
+        assertTrue(Files.readString(directory.resolve("lib.jar.sha256")).startsWith(sha256(JAR) + " "));
+    }
+    
+    @Test
+    void trustsVerifiedFileUntilItChanges() throws Exception {
+        var uri = publish("/lib.jar", JAR, sha256(JAR));
+        var target = directory.resolve("lib.jar");
+        downloader.download(uri, target).join();
+        
+        // Same size and modification time, the file is not hashed again.
+        var modified = Files.getLastModifiedTime(target);
+        var tampered = JAR.clone();
+        tampered[0] ^= 1;
+        Files.write(target, tampered);
+        Files.setLastModifiedTime(target, modified);
+        files.clear();
+        assertEquals(target, downloader.download(uri, target).join());
+        assertArrayEquals(tampered, Files.readAllBytes(target));
+        
+        // A different modification time is hashed, the mismatch is fetched again.
+        Files.setLastModifiedTime(target, FileTime.fromMillis(modified.toMillis() - 60_000));
+        publish("/lib.jar", JAR, sha256(JAR));
+        downloader.download(uri, target).join();
+        assertArrayEquals(JAR, Files.readAllBytes(target));
+    }
+    
+    @Test
+    void timesOutStalledBody() throws Exception {
+        var uri = publish("/lib.jar", JAR, sha256(JAR));
+        stalled.add("/lib.jar");
+        var target = directory.resolve("lib.jar");
+        
+        assertInstanceOf(HttpTimeoutException.class, failure(() -> downloader.download(uri, target).join()));
+        assertFalse(Files.exists(target));
+    }
+    
+    @Test
+    void timesOutStalledServer() {
+        var uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/stall/lib.jar");
+        var target = directory.resolve("lib.jar");
+        
+        assertInstanceOf(HttpTimeoutException.class, failure(() -> downloader.download(uri, target).join()));
+    }
+}
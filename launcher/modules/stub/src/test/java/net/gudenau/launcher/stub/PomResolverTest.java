@@ -0,0 +1,152 @@
+package net.gudenau.launcher.stub;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PomResolverTest {
+    @TempDir
+    Path directory;
+    
+    private Path repository;
+    private PomResolver resolver;
+    
+    @BeforeEach
+    void setUp() {
+        repository = directory.resolve("repository");
+        var repositories = new Repositories(
+            List.of(new MavenRepository(repository.toUri(), HttpClient.newHttpClient(), Duration.ofSeconds(5))),
+            false,
+            directory.resolve("repositories.properties")
+        );
+        resolver = new PomResolver(repositories, directory.resolve("resolutions"));
+    }
+    
+    private List<String> resolve(String... roots) throws IOException {
+        return resolver.resolve(List.of(roots).stream().map(Coordinate::parse).toList()).stream()
+            .map(Coordinate::toString)
+            .toList();
+    }
+    
+    private void pom(String coordinate, String... sections) throws IOException {
+        var parsed = Coordinate.parse(coordinate);
+        var path = repository.resolve(parsed.path("pom"));
+        Files.createDirectories(path.getParent());
+        Files.writeString(path, "<project>" +
+            "<groupId>" + parsed.group() + "</groupId>" +
+            "<artifactId>" + parsed.name() + "</artifactId>" +
+            "<version>" + parsed.version() + "</version>" +
+            String.join("", sections) +
+            "</project>");
+    }
+    
+    private void metadata(String key, String... versions) throws IOException {
+        var parts = key.split(":");
+        var path = repository.resolve(parts[0].replace('.', '/') + '/' + parts[1] + "/maven-metadata.xml");
+        Files.createDirectories(path.getParent());
+        var builder = new StringBuilder("<metadata><versioning><versions>");
+        for(var version : versions) {
+            builder.append("<version>").append(version).append("</version>");
+        }
+        Files.writeString(path, builder.append("</versions></versioning></metadata>").toString());
+    }
+    
+    private static String dependencies(String... dependencies) {
+        return "<dependencies>" + String.join("", dependencies) + "</dependencies>";
+    }
+    
+    private static String management(String... dependencies) {
+        return "<dependencyManagement>" + dependencies(dependencies) + "</dependencyManagement>";
+    }
+    
+    // group:name[:version][@scope]
+    private static String dependency(String coordinate) {
+        var scope = coordinate.contains("@") ? coordinate.substring(coordinate.indexOf('@') + 1) : null;
+        var parts = (scope == null ? coordinate : coordinate.substring(0, coordinate.indexOf('@'))).split(":");
+        return "<dependency>" +
+            "<groupId>" + parts[0] + "</groupId>" +
+            "<artifactId>" + parts[1] + "</artifactId>" +
+            (parts.length > 2 ? "<version>" + parts[2] + "</version>" : "") +
+            (scope == null ? "" : "<scope>" + scope + "</scope>") +
+            (scope != null && scope.equals("import") ? "<type>pom</type>" : "") +
+            "</dependency>";
+    }
+    
+    @Test
+    void nearestDeclarationWins() throws IOException {
+        pom("test:root:1", dependencies(dependency("test:b:1"), dependency("test:c:1")));
+        pom("test:b:1", dependencies(dependency("test:shared:1"), dependency("test:deep:1")));
+        pom("test:c:1", dependencies(dependency("test:shared:2"), dependency("test:e:1")));
+        pom("test:e:1", dependencies(dependency("test:deep:2")));
+        pom("test:shared:1");
+        pom("test:deep:1");
+        
+        assertEquals(List.of("test:root:1", "test:b:1", "test:c:1", "test:shared:1", "test:deep:1", "test:e:1"), resolve("test:root:1"));
+    }
+    
+    @Test
+    void selectsHighestVersionInRange() throws IOException {
+        pom("test:root:1", dependencies(dependency("test:ranged:[1.0,2.0)")));
+        metadata("test:ranged", "0.9", "1.0", "1.5", "2.0");
+        pom("test:ranged:1.5");
+        
+        assertEquals(List.of("test:root:1", "test:ranged:1.5"), resolve("test:root:1"));
+    }
+    
+    @Test
+    void rootManagementOverridesTransitiveVersions() throws IOException {
+        pom("test:root:1",
+            management(dependency("test:lib:3"), dependency("test:b:2"), dependency("test:dropped:1@test")),
+            dependencies(dependency("test:b:1"))
+        );
+        pom("test:b:1", dependencies(dependency("test:c:1"), dependency("test:dropped:1")));
+        pom("test:c:1", dependencies(dependency("test:lib:1")));
+        pom("test:lib:3");
+        
+        // The version the root declares itself still beats its own management.
+        assertEquals(List.of("test:root:1", "test:b:1", "test:c:1", "test:lib:3"), resolve("test:root:1"));
+    }
+    
+    @Test
+    void onlyRootManagementApplies() throws IOException {
+        pom("test:root:1", dependencies(dependency("test:b:1")));
+        pom("test:b:1", management(dependency("test:lib:2")), dependencies(dependency("test:c:1")));
+        pom("test:c:1", dependencies(dependency("test:lib:1")));
+        pom("test:lib:1");
+        
+        assertEquals(List.of("test:root:1", "test:b:1", "test:c:1", "test:lib:1"), resolve("test:root:1"));
+    }
+    
+    @Test
+    void importedManagementAppliesTransitively() throws IOException {
+        pom("test:bom:1", management(dependency("test:lib:4"), dependency("test:direct:2")));
+        pom("test:root:1",
+            management(dependency("test:bom:1@import")),
+            dependencies(dependency("test:direct"), dependency("test:b:1"))
+        );
+        pom("test:b:1", dependencies(dependency("test:lib:1")));
+        pom("test:direct:2");
+        pom("test:lib:4");
+        
+        assertEquals(List.of("test:root:1", "test:direct:2", "test:b:1", "test:lib:4"), resolve("test:root:1"));
+    }
+    
+    @Test
+    void cachesResolution() throws IOException {
+        pom("test:root:1", dependencies(dependency("test:b:1")));
+        pom("test:b:1");
+        var first = resolve("test:root:1");
+        
+        Files.delete(repository.resolve(Coordinate.parse("test:b:1").path("pom")));
+        assertEquals(first, resolve("test:root:1"));
+    }
+}
@@ -0,0 +1,475 @@
+package net.gudenau.launcher.boot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.module.FindException;
+import java.lang.module.InvalidModuleDescriptorException;
+import java.lang.module.ModuleDescriptor;
+import java.lang.module.ModuleFinder;
+import java.lang.module.ModuleReader;
+import java.lang.module.ModuleReference;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipFile;
+
+/**
+ * Caches the module descriptors of jars so warm starts can build module layers without opening a single jar.
+ *
+ * Every jar is fingerprinted by its path, size and modification time. When the fingerprint matches the cache the
+ * descriptor is rebuilt from the cache and the jar itself is only opened once a class loader actually needs something
+ * from it.
+ *
+ * This file is shared between the stub and the launcher, so it must only depend on the JDK.
+ */
+public final class ModuleCache {
+    private static final int MAGIC = 0x4D4F4443;
+    private static final int FORMAT = 1;
+    
+    private record Entry(long size, long modified, ModuleDescriptor descriptor) {}
+    
+    /**
+     * Finds the modules in a set of jars, using and updating the cache.
+     *
+     * @param cache The cache file
+     * @param jars The jars to search
+     * @return A reference for every jar
+     */
+    public static List<ModuleReference> load(Path cache, Collection<Path> jars) throws IOException {
+        try {
+            return load(cache, jars, (path, exception) -> {
+                // Writing the cache is best effort, a library that can not be read is not.
+                if(!path.equals(cache)) {
+                    throw new UncheckedIOException(exception);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+    
+    /**
+     * Finds the modules in a set of jars, using and updating the cache.
+     *
+     * Jars that are not a module or can not be read are skipped, a cache that can not be written only costs the next
+     * start some time. Both are reported to the error handler with the path that failed.
+     *
+     * @param cache The cache file
+     * @param jars The jars to search
+     * @param errors The error handler
+     * @return A reference for every jar that could be read
+     */
+    public static List<ModuleReference> load(Path cache, Collection<Path> jars, BiConsumer<Path, IOException> errors) {
+        var cached = read(cache);
+        var paths = new ArrayList<Path>(jars.size());
+        var entries = new HashMap<String, Entry>();
+        var misses = new ArrayList<Path>();
+        
+        for(var jar : jars) {
+            var path = jar.toAbsolutePath().normalize();
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (IOException e) {
+                errors.accept(path, e);
+                continue;
+            }
+            var size = attributes.size();
+            var modified = attributes.lastModifiedTime().toMillis();
+            
+            paths.add(path);
+            var entry = cached.get(path.toString());
+            if(entry == null || entry.size() != size || entry.modified() != modified) {
+                entries.put(path.toString(), new Entry(size, modified, null));
+                misses.add(path);
+            } else {
+                entries.put(path.toString(), entry);
+            }
+        }
+        
+        // Cold starts are dominated by opening jars, so they are opened in parallel.
+        if(!misses.isEmpty()) {
+            var descriptors = new ConcurrentHashMap<Path, ModuleDescriptor>();
+            var failures = new ConcurrentHashMap<Path, IOException>();
+            misses.parallelStream().forEach((path) -> {
+                try {
+                    descriptors.put(path, scan(path));
+                } catch (IOException e) {
+                    failures.put(path, e);
+                }
+            });
+            descriptors.forEach((path, descriptor) -> entries.compute(path.toString(), (key, entry) ->
+                new Entry(entry.size(), entry.modified(), descriptor)
+            ));
+            
+            // Skipped jars are not cached, they get another chance on the next start.
+            for(var path : misses) {
+                var failure = failures.get(path);
+                if(failure != null) {
+                    paths.remove(path);
+                    entries.remove(path.toString());
+                    errors.accept(path, failure);
+                }
+            }
+        }
+        
+        if(!misses.isEmpty() || cached.size() != entries.size()) {
+            try {
+                write(cache, entries);
+            } catch (IOException e) {
+                errors.accept(cache, e);
+            }
+        }
+        
+        var references = new ArrayList<ModuleReference>(paths.size());
+        for(var path : paths) {
+            references.add(new JarReference(entries.get(path.toString()).descriptor(), path));
+        }
+        return references;
+    }
+    
+    /**
+     * Creates a finder for a set of references.
+     *
+     * @param references The references
+     * @return A finder that only finds the references
+     */
+    public static ModuleFinder finder(Collection<ModuleReference> references) {
+        var modules = new HashMap<String, ModuleReference>();
+        for(var reference : references) {
+            var existing = modules.putIfAbsent(reference.descriptor().name(), reference);
+            if(existing != null) {
+                throw new FindException(
+                    "Two versions of module " + reference.descriptor().name() + " found: " +
+                    existing.location().orElse(null) + " and " + reference.location().orElse(null)
+                );
+            }
+        }
+        var all = Set.copyOf(modules.values());
+        
+        return new ModuleFinder() {
+            @Override
+            public Optional<ModuleReference> find(String name) {
+                return Optional.ofNullable(modules.get(name));
+            }
+            
+            @Override
+            public Set<ModuleReference> findAll() {
+                return all;
+            }
+        };
+    }
+    
+    // Modular jars only need their module-info, automatic modules are left to the JDK.
+    private static ModuleDescriptor scan(Path jar) throws IOException {
+        try(var file = new JarFile(jar.toFile(), true, ZipFile.OPEN_READ, Runtime.version())) {
+            var info = file.getJarEntry("module-info.class");
+            if(info != null) {
+                try(var input = file.getInputStream(info)) {
+                    return ModuleDescriptor.read(input, () -> packages(file));
+                } catch (InvalidModuleDescriptorException e) {
+                    throw new IOException("Failed to read module " + jar, e);
+                }
+            }
+        }
+        
+        try {
+            var modules = ModuleFinder.of(jar).findAll();
+            if(modules.size() != 1) {
+                throw new IOException("Expected one module in " + jar + " but found " + modules.size());
+            }
+            return modules.iterator().next().descriptor();
+        } catch (FindException e) {
+            throw new IOException("Failed to read module " + jar, e);
+        }
+    }
+    
+    // Only used when the module-info has no ModulePackages attribute, matches what the JDK does for modular jars.
+    private static Set<String> packages(JarFile file) {
+        return file.versionedStream()
+            .filter((entry) -> !entry.isDirectory())
+            .map(JarEntry::getName)
+            .filter((name) -> name.indexOf('/') > 0)
+            .filter((name) -> !name.startsWith("META-INF/"))
+            .map((name) -> name.substring(0, name.lastIndexOf('/')).replace('/', '.'))
+            .filter(ModuleCache::isPackageName)
+            .collect(Collectors.toSet());
+    }
+    
+    private static boolean isPackageName(String name) {
+        for(var part : name.split("\\.", -1)) {
+            if(part.isEmpty() || !Character.isJavaIdentifierStart(part.codePointAt(0))) {
+                return false;
+            }
+            if(!part.codePoints().allMatch(Character::isJavaIdentifierPart)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static Map<String, Entry> read(Path cache) {
+        var entries = new HashMap<String, Entry>();
+        try(var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(cache)))) {
+            if(input.readInt() != MAGIC || input.readInt() != FORMAT || input.readInt() != Runtime.version().feature()) {
+                return Map.of();
+            }
+            for(int i = input.readInt(); i > 0; i--) {
+                var path = input.readUTF();
+                entries.put(path, new Entry(input.readLong(), input.readLong(), readDescriptor(input)));
+            }
+        } catch (NoSuchFileException ignored) {
+            return Map.of();
+        } catch (IOException | RuntimeException e) {
+            // A broken cache is only a slow start.
+            return Map.of();
+        }
+        return entries;
+    }
+    
+    private static void write(Path cache, Map<String, Entry> entries) throws IOException {
+        Files.createDirectories(cache.toAbsolutePath().getParent());
+        // Unique so two launchers starting at once do not write over each others half finished cache.
+        var temp = Files.createTempFile(cache.toAbsolutePath().getParent(), cache.getFileName().toString(), ".tmp");
+        try(var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT);
+            output.writeInt(Runtime.version().feature());
+            output.writeInt(entries.size());
+            for(var entry : entries.entrySet()) {
+                output.writeUTF(entry.getKey());
+                output.writeLong(entry.getValue().size());
+                output.writeLong(entry.getValue().modified());
+                writeDescriptor(output, entry.getValue().descriptor());
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        try {
+            Files.move(temp, cache, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+    
+    private static void writeDescriptor(DataOutputStream output, ModuleDescriptor descriptor) throws IOException {
+        output.writeUTF(descriptor.name());
+        writeStrings(output, descriptor.modifiers().stream().map(Enum::name).toList());
+        writeOptional(output, descriptor.version().map(ModuleDescriptor.Version::toString));
+        writeOptional(output, descriptor.mainClass());
+        
+        var automatic = descriptor.isAutomatic();
+        output.writeInt(automatic ? 0 : descriptor.requires().size());
+        if(!automatic) {
+            for(var requires : descriptor.requires()) {
+                writeStrings(output, requires.modifiers().stream().map(Enum::name).toList());
+                output.writeUTF(requires.name());
+                writeOptional(output, requires.compiledVersion().map(ModuleDescriptor.Version::toString));
+            }
+        }
+        output.writeInt(automatic ? 0 : descriptor.exports().size());
+        if(!automatic) {
+            for(var exports : descriptor.exports()) {
+                writeStrings(output, exports.modifiers().stream().map(Enum::name).toList());
+                output.writeUTF(exports.source());
+                writeStrings(output, exports.targets());
+            }
+        }
+        output.writeInt(automatic || descriptor.isOpen() ? 0 : descriptor.opens().size());
+        if(!automatic && !descriptor.isOpen()) {
+            for(var opens : descriptor.opens()) {
+                writeStrings(output, opens.modifiers().stream().map(Enum::name).toList());
+                output.writeUTF(opens.source());
+                writeStrings(output, opens.targets());
+            }
+        }
+        writeStrings(output, automatic ? Set.of() : descriptor.uses());
+        output.writeInt(descriptor.provides().size());
+        for(var provides : descriptor.provides()) {
+            output.writeUTF(provides.service());
+            writeStrings(output, provides.providers());
+        }
+        writeStrings(output, descriptor.packages());
+    }
+    
+    private static ModuleDescriptor readDescriptor(DataInputStream input) throws IOException {
+        var name = input.readUTF();
+        var modifiers = new HashSet<ModuleDescriptor.Modifier>();
+        for(var modifier : readStrings(input)) {
+            modifiers.add(ModuleDescriptor.Modifier.valueOf(modifier));
+        }
+        var builder = ModuleDescriptor.newModule(name, modifiers);
+        readOptional(input).ifPresent(builder::version);
+        var mainClass = readOptional(input);
+        
+        for(int i = input.readInt(); i > 0; i--) {
+            var requiresModifiers = new HashSet<ModuleDescriptor.Requires.Modifier>();
+            for(var modifier : readStrings(input)) {
+                requiresModifiers.add(ModuleDescriptor.Requires.Modifier.valueOf(modifier));
+            }
+            var requires = input.readUTF();
+            var version = readOptional(input);
+            if(version.isPresent()) {
+                builder.requires(requiresModifiers, requires, ModuleDescriptor.Version.parse(version.get()));
+            } else {
+                builder.requires(requiresModifiers, requires);
+            }
+        }
+        for(int i = input.readInt(); i > 0; i--) {
+            var exportsModifiers = new HashSet<ModuleDescriptor.Exports.Modifier>();
+            for(var modifier : readStrings(input)) {
+                exportsModifiers.add(ModuleDescriptor.Exports.Modifier.valueOf(modifier));
+            }
+            var source = input.readUTF();
+            var targets = readStrings(input);
+            if(targets.isEmpty()) {
+                builder.exports(exportsModifiers, source);
+            } else {
+                builder.exports(exportsModifiers, source, Set.copyOf(targets));
+            }
+        }
+        for(int i = input.readInt(); i > 0; i--) {
+            var opensModifiers = new HashSet<ModuleDescriptor.Opens.Modifier>();
+            for(var modifier : readStrings(input)) {
+                opensModifiers.add(ModuleDescriptor.Opens.Modifier.valueOf(modifier));
+            }
+            var source = input.readUTF();
+            var targets = readStrings(input);
+            if(targets.isEmpty()) {
+                builder.opens(opensModifiers, source);
+            } else {
+                builder.opens(opensModifiers, source, Set.copyOf(targets));
+            }
+        }
+        readStrings(input).forEach(builder::uses);
+        for(int i = input.readInt(); i > 0; i--) {
+            var service = input.readUTF();
+            builder.provides(service, readStrings(input));
+        }
+        builder.packages(Set.copyOf(readStrings(input)));
+        mainClass.ifPresent(builder::mainClass);
+        return builder.build();
+    }
+    
+    private static void writeStrings(DataOutputStream output, Collection<String> strings) throws IOException {
+        output.writeInt(strings.size());
+        for(var string : strings) {
+            output.writeUTF(string);
+        }
+    }
+    
+    private static List<String> readStrings(DataInputStream input) throws IOException {
+        var count = input.readInt();
+        var strings = new ArrayList<String>(count);
+        for(int i = 0; i < count; i++) {
+            strings.add(input.readUTF());
+        }
+        return strings;
+    }
+    
+    private static void writeOptional(DataOutputStream output, Optional<String> value) throws IOException {
+        output.writeBoolean(value.isPresent());
+        if(value.isPresent()) {
+            output.writeUTF(value.get());
+        }
+    }
+    
+    private static Optional<String> readOptional(DataInputStream input) throws IOException {
+        return input.readBoolean() ? Optional.of(input.readUTF()) : Optional.empty();
+    }
+    
+    /**
+     * A reference to a modular or automatic jar that only opens the jar when it is read from.
+     */
+    private static final class JarReference extends ModuleReference {
+        private final Path jar;
+        
+        private JarReference(ModuleDescriptor descriptor, Path jar) {
+            super(descriptor, jar.toUri());
+            this.jar = jar;
+        }
+        
+        @Override
+        public ModuleReader open() throws IOException {
+            return new JarReader(new JarFile(jar.toFile(), true, ZipFile.OPEN_READ, Runtime.version()), jar.toUri());
+        }
+    }
+    
+    private static final class JarReader implements ModuleReader {
+        private final JarFile jar;
+        private final URI location;
+        private volatile boolean closed;
+        
+        private JarReader(JarFile jar, URI location) {
+            this.jar = jar;
+            this.location = location;
+        }
+        
+        @Override
+        public Optional<URI> find(String name) throws IOException {
+            ensureOpen();
+            var entry = jar.getJarEntry(name);
+            if(entry == null) {
+                return Optional.empty();
+            }
+            // Multi-release jars can serve a name from a versioned entry.
+            return Optional.of(URI.create("jar:" + location + "!/" + entry.getRealName()));
+        }
+        
+        @Override
+        public Optional<InputStream> open(String name) throws IOException {
+            ensureOpen();
+            var entry = jar.getJarEntry(name);
+            return entry == null || entry.isDirectory() ? Optional.empty() : Optional.of(jar.getInputStream(entry));
+        }
+        
+        @Override
+        public Stream<String> list() throws IOException {
+            ensureOpen();
+            return Collections.list(jar.entries()).stream()
+                .map((entry) -> entry.getName())
+                .filter((name) -> !name.startsWith("META-INF/versions/"));
+        }
+        
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            jar.close();
+        }
+        
+        private void ensureOpen() throws IOException {
+            if(closed) {
+                throw new IOException("ModuleReader is closed");
+            }
+        }
+    }
+    
+    private ModuleCache() {
+        throw new AssertionError();
+    }
+}
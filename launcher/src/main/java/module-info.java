@@ -5,6 +5,8 @@ import net.gudenau.launcher.api.game.GameProvider;
 module launcher {
     requires java.desktop;
     requires jdk.unsupported;
+    requires java.management;
+    requires jdk.management;
     
     requires org.objectweb.asm;
     requires org.objectweb.asm.tree;
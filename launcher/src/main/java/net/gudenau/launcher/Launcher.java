@@ -33,7 +33,8 @@ public class Launcher {
             Architecture.get()
         );
     
-        ThreadUtil.waitFor(() -> {
+        // Everything here is on the way to the loading screen, nothing else should get ahead of it.
+        ThreadUtil.waitFor(ThreadUtil.Priority.UI, () -> {
             ResourceManager.get().registerProvider(ResourceProvider.of(NAMESPACE, Launcher.class));
             
             try {
@@ -57,6 +58,11 @@ public class Launcher {
                 }
                 Communications.init(readPipe, writePipe);
                 LOGGER.info("Container version: %s", ContainerControl.version());
+                try {
+                    ContainerControl.openSharedMemory();
+                } catch (IOException e) {
+                    LOGGER.warning(e, "Shared memory disabled, streams are sent over the pipe");
+                }
             } catch (Throwable e) {
                 Communications.disable();
                 LOGGER.info(e, "Container manager disabled");
@@ -6,7 +6,9 @@ import org.jetbrains.annotations.NotNull;
 
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 
 /**
  * The core of the plugin system, all plugins are required to implement this interface and register the implementation
@@ -25,8 +27,55 @@ public interface Plugin extends Identified {
         return PluginLoader.getLoadedPlugin(id);
     }
     
+    /**
+     * Gets the executor of a plugin. Background work of a plugin should go here instead of threads of its own, the
+     * executor has a limited number of threads and a limited queue and the work counts against the plugin's budget.
+     *
+     * @param id The {@link UUID} of the plugin
+     * @return The executor of the plugin
+     * @throws IllegalArgumentException If there is no plugin with the provided {@link UUID}
+     */
+    @NotNull
+    static Executor executor(@NotNull UUID id) {
+        Objects.requireNonNull(id, "id can't be null");
+        return PluginLoader.getExecutor(id);
+    }
+    
+    /**
+     * Gets the plugins that have to finish {@link #init()} before this one starts. Plugins from modules that this
+     * plugin's module requires are always initialized first, this is only needed for plugins that are not.
+     *
+     * @return The {@link UUID}s of the plugins to wait for
+     */
+    @NotNull
+    default Set<UUID> dependencies() {
+        return Set.of();
+    }
+    
+    /**
+     * Checks if this plugin can be initialized on demand. A lazy plugin is initialized the first time one of the
+     * services its module provides is used or another plugin needs it, instead of during startup.
+     *
+     * @implSpec Lazy plugins should be cheap to construct, an instance of every plugin is still created at startup.
+     * @return True if this plugin can be initialized lazily
+     */
+    default boolean isLazy() {
+        return false;
+    }
+    
     /**
      * Run initialization tasks that the plugin might need to do.
+     *
+     * @implNote Plugins without a dependency between them are initialized in parallel, every plugin on its own
+     * executor.
      */
     default void init() {}
+    
+    /**
+     * Releases everything this plugin holds, it is called before the plugin is unloaded because its jar or a plugin it
+     * depends on changed. Only plugins that were initialized are unloaded.
+     *
+     * @implSpec Anything registered with the launcher has to be removed here, or the old classes can never be freed.
+     */
+    default void unload() {}
 }
@@ -40,6 +40,14 @@ public sealed interface ResourceManager permits ResourceManagerImpl {
      */
     void registerProvider(@NotNull ResourceProvider provider);
     
+    /**
+     * Removes the {@link ResourceProvider} of a namespace, if there is one. Providers that are {@link AutoCloseable}
+     * are closed.
+     *
+     * @param namespace The namespace to remove
+     */
+    void unregisterProvider(@NotNull String namespace);
+    
     /**
      * Gets the {@link Path} representation of an {@link Identifier}.
      *
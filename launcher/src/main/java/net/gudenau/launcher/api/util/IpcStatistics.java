@@ -0,0 +1,90 @@
+package net.gudenau.launcher.api.util;
+
+import net.gudenau.launcher.coms.IpcMetrics;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+
+/**
+ * Statistics about the IPC channel between the launcher and the container.
+ */
+public sealed interface IpcStatistics permits IpcMetrics {
+    /**
+     * Gets the {@link IpcStatistics} singleton.
+     *
+     * @return The {@link IpcStatistics} singleton
+     */
+    @NotNull
+    static IpcStatistics instance() {
+        return IpcMetrics.INSTANCE;
+    }
+    
+    /**
+     * Takes a snapshot of the current statistics. Counters are totals since the launcher started, diff two snapshots
+     * and divide by the difference of their timestamps to get rates.
+     *
+     * @return The current statistics
+     */
+    @NotNull Snapshot snapshot();
+    
+    /**
+     * A point in time view of the IPC channel.
+     *
+     * @param timestamp The {@link System#nanoTime()} the snapshot was taken at
+     * @param pendingRequests The amount of requests waiting for a reply from the container
+     * @param openStreams The amount of open streams
+     * @param queuedFrames The amount of packets waiting to be written
+     * @param queuedBytes The amount of bytes waiting to be written
+     * @param writerStalls How long senders had to wait because the write queue was full
+     * @param packets The statistics of each packet type, keyed by the packet name
+     */
+    record Snapshot(
+        long timestamp,
+        int pendingRequests,
+        int openStreams,
+        int queuedFrames,
+        int queuedBytes,
+        @NotNull Latency writerStalls,
+        @NotNull Map<String, PacketStatistics> packets
+    ) {}
+    
+    /**
+     * The statistics of a single packet type.
+     *
+     * @param sent The amount of packets sent
+     * @param received The amount of packets received
+     * @param bytesSent The amount of bytes sent, including headers
+     * @param bytesReceived The amount of bytes received, including headers
+     * @param latency The round trip time of requests that start with this packet
+     */
+    record PacketStatistics(
+        long sent,
+        long received,
+        long bytesSent,
+        long bytesReceived,
+        @NotNull Latency latency
+    ) {}
+    
+    /**
+     * A summary of a latency histogram, all values are in nanoseconds and percentiles are accurate to about 3%.
+     *
+     * @param count The amount of recorded values
+     * @param min The smallest recorded value
+     * @param max The largest recorded value
+     * @param mean The mean of all recorded values
+     * @param p50 The median
+     * @param p90 The 90th percentile
+     * @param p99 The 99th percentile
+     * @param p999 The 99.9th percentile
+     */
+    record Latency(
+        long count,
+        long min,
+        long max,
+        long mean,
+        long p50,
+        long p90,
+        long p99,
+        long p999
+    ) {}
+}
@@ -0,0 +1,49 @@
+package net.gudenau.launcher.coms;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A small pool of direct buffers so sending a packet doesn't allocate direct memory every time.
+ *
+ * Requests larger than the pooled size get a one off buffer that is dropped on release.
+ */
+final class BufferPool {
+    private final int bufferSize;
+    private final int maxPooled;
+    private final Deque<ByteBuffer> buffers = new ArrayDeque<>();
+    
+    BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+    
+    ByteBuffer acquire(int size) {
+        if(size > bufferSize) {
+            return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+        }
+        
+        ByteBuffer buffer;
+        synchronized (buffers) {
+            buffer = buffers.pollFirst();
+        }
+        if(buffer == null) {
+            buffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.nativeOrder());
+        }
+        return buffer.clear();
+    }
+    
+    void release(ByteBuffer buffer) {
+        if(buffer.capacity() != bufferSize) {
+            return;
+        }
+        
+        synchronized (buffers) {
+            if(buffers.size() < maxPooled) {
+                buffers.addFirst(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package net.gudenau.launcher.coms;
+
+/**
+ * The doorbell for a chunk of stream data the container placed in {@link SharedMemory}, the data itself never goes
+ * through the pipe. It consumes stream credit like a {@link StreamDataPacket}.
+ */
+record BulkTransferPacket(int stream, long position, int length) implements StreamPacket {}
@@ -0,0 +1,6 @@
+package net.gudenau.launcher.coms;
+
+/**
+ * Tells the container we stopped waiting for a request, it skips the work if it did not start yet and drops the reply.
+ */
+record CancelPacket(int request) implements Packet {}
@@ -2,165 +2,361 @@ package net.gudenau.launcher.coms;
 
 import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
-import it.unimi.dsi.fastutil.objects.Object2IntMap;
-import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
-import net.gudenau.launcher.impl.util.LookupHelper;
+import net.gudenau.launcher.api.util.Logger;
+import net.gudenau.launcher.impl.util.Configuration;
 import net.gudenau.launcher.impl.util.MiscUtil;
-import net.gudenau.launcher.impl.util.UnsafeHelper;
 
-import java.io.FileDescriptor;
 import java.io.IOException;
-import java.lang.invoke.MethodType;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.channels.Pipe;
-import java.nio.channels.spi.AbstractInterruptibleChannel;
-import java.nio.channels.spi.AbstractSelectableChannel;
-import java.util.LinkedList;
-import java.util.List;
+import java.io.InterruptedIOException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.locks.ReentrantLock;
-import java.util.function.Supplier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public final class Communications {
-    private static Pipe.SourceChannel source;
-    private static Pipe.SinkChannel sink;
-    private static Thread thread;
+    private static final Logger LOGGER = Logger.forName("launcher");
     
-    private static final Int2ObjectMap<Supplier<Packet>> PACKET_FACTORIES = new Int2ObjectOpenHashMap<>();
-    private static final Object2IntMap<Class<? extends Packet>> PACKET_IDS = new Object2IntOpenHashMap<>();
+    /**
+     * The packet header, packet id, payload length and the request id the packet belongs to.
+     */
+    static final int HEADER_SIZE = 12;
+    
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final BufferPool WRITE_BUFFERS = new BufferPool(8 * 1024, 32);
+    
+    private static ReadableByteChannel source;
+    private static GatheringByteChannel sink;
+    private static volatile FrameWriter writer;
+    private static volatile SharedMemory sharedMemory;
+    
+    private record PacketType<T extends Packet>(int id, PacketCodec<T> codec, IpcMetrics.PacketMetrics metrics) {}
+    
+    private static final Int2ObjectMap<PacketType<?>> PACKETS_BY_ID = new Int2ObjectOpenHashMap<>();
+    private static final Map<Class<?>, PacketType<?>> PACKETS_BY_TYPE = new HashMap<>();
     static {
-        PACKET_FACTORIES.defaultReturnValue(null);
-        PACKET_IDS.defaultReturnValue(-1);
-        
-        register(1, ContainerVersionPacket::new);
+        register(1, ContainerVersionPacket.class);
+        register(2, SharedMemoryPacket.class);
+        register(3, BulkTransferPacket.class);
+        register(4, StreamOpenPacket.class);
+        register(5, StreamDataPacket.class);
+        register(6, StreamAckPacket.class);
+        register(7, StreamClosePacket.class);
+        register(8, CancelPacket.class);
     }
     
-    private static void register(int id, Supplier<Packet> factory) {
-        PACKET_FACTORIES.put(id, factory);
-        PACKET_IDS.put(factory.get().getClass(), id);
+    private static <T extends Record & Packet> void register(int id, Class<T> type) {
+        var packetType = new PacketType<>(id, PacketCodecs.generate(type), IpcMetrics.INSTANCE.packet(type));
+        PACKETS_BY_ID.put(id, packetType);
+        PACKETS_BY_TYPE.put(type, packetType);
     }
     
-    private static final class Waiter<T extends Packet> {
-        private final Class<T> type;
-        private T value;
+    // Touched by the reader, the writer and every caller at once, fastutil has no concurrent maps.
+    private static final ConcurrentHashMap<Integer, Request<?>> PENDING = new ConcurrentHashMap<>();
+    private static final AtomicInteger NEXT_REQUEST = new AtomicInteger();
+    private static final ConcurrentHashMap<Integer, IpcStream> STREAMS = new ConcurrentHashMap<>();
+    private static final AtomicInteger NEXT_STREAM = new AtomicInteger();
+    
+    /**
+     * An in-flight request waiting for the container to reply with the same request id.
+     */
+    private record Request<T extends Packet>(
+        Class<T> type,
+        CompletableFuture<T> future,
+        IpcMetrics.PacketMetrics metrics,
+        long start
+    ) {
+        Request(Class<T> type, IpcMetrics.PacketMetrics metrics) {
+            this(type, new CompletableFuture<>(), metrics, System.nanoTime());
+        }
         
-        private Waiter(Class<T> type) {
-            this.type = type;
-        }
-    }
-    
-    private static final List<Waiter> WAITERS = new LinkedList<>();
-    
-    private static void packetReader() {
-        while(true) {
-            try {
-                var packet = readPacket();
-                var type = packet.getClass();
-                synchronized (WAITERS) {
-                    for (var waiter : WAITERS) {
-                        if(waiter.type == type) {
-                            waiter.value = packet;
-                            synchronized (waiter) {
-                                waiter.notify();
-                            }
-                        }
-                    }
-                }
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+        void complete(Packet packet) {
+            metrics.roundTrip(System.nanoTime() - start);
+            if (type.isInstance(packet)) {
+                future.complete(type.cast(packet));
+            } else {
+                future.completeExceptionally(new IOException(
+                    "Expected " + MiscUtil.className(type) + " but got " + MiscUtil.className(packet.getClass())
+                ));
             }
         }
     }
     
-    static <T extends Packet> T waitForPacket(Class<T> type) {
+    private static void packetReader(ReadableByteChannel source) {
         try {
-            return readPacket(type).get();
-        } catch (InterruptedException | ExecutionException e) {
-            throw new RuntimeException("Failed to wait for packet", e);
+            var reader = new FrameReader(source, READ_BUFFER_SIZE);
+            while (true) {
+                reader.next();
+                readPacket(reader);
+            }
+        } catch (IOException e) {
+            failPending(e);
+        }
+    }
+    
+    private static void failPending(IOException exception) {
+        for (var iterator = PENDING.values().iterator(); iterator.hasNext(); ) {
+            var request = iterator.next();
+            iterator.remove();
+            request.future().completeExceptionally(exception);
+        }
+        for (var iterator = STREAMS.values().iterator(); iterator.hasNext(); ) {
+            var stream = iterator.next();
+            iterator.remove();
+            stream.finish(exception);
         }
     }
     
-    static <T extends Packet> CompletableFuture<T> readPacket(Class<T> type) {
-        return CompletableFuture.supplyAsync(() -> {
-            var waiter = new Waiter<>(type);
-            synchronized (WAITERS) {
-                WAITERS.add(waiter);
+    private static int allocateRequest(Request<?> request) {
+        while (true) {
+            // 0 is reserved for packets that are not a reply to anything.
+            int id = NEXT_REQUEST.incrementAndGet();
+            if (id != 0 && PENDING.putIfAbsent(id, request) == null) {
+                return id;
             }
-            synchronized (waiter) {
-                if(waiter.value != null) {
-                    return waiter.value;
-                }
-                try {
-                    waiter.wait();
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                }
-                return waiter.value;
+        }
+    }
+    
+    static <T extends Packet> T call(Packet packet, Class<T> response) throws IOException {
+        return call(packet, response, null);
+    }
+    
+    /**
+     * Sends a request and waits for the reply, giving up once the timeout elapsed. Giving up, including being
+     * interrupted, cancels the request on the container side.
+     */
+    static <T extends Packet> T call(Packet packet, Class<T> response, Duration timeout) throws IOException {
+        var future = request(packet, response, timeout);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + MiscUtil.className(response));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                throw new InterruptedIOException("Timed out after " + timeout.toMillis() + "ms waiting for " + MiscUtil.className(response));
+            }
+            if (e.getCause() instanceof IOException exception) {
+                throw exception;
+            }
+            throw new IOException("Failed to wait for " + MiscUtil.className(response), e.getCause());
+        }
+    }
+    
+    static <T extends Packet> CompletableFuture<T> request(Packet packet, Class<T> response) throws IOException {
+        return request(packet, response, null);
+    }
+    
+    /**
+     * Sends a request, the returned future fails with a {@link TimeoutException} once the timeout elapsed. Cancelling
+     * the future or letting it time out cancels the request on the container side.
+     */
+    static <T extends Packet> CompletableFuture<T> request(Packet packet, Class<T> response, Duration timeout) throws IOException {
+        var request = new Request<>(response, packetType(packet).metrics());
+        int id = allocateRequest(request);
+        try {
+            writePacket(packet, id);
+        } catch (Throwable e) {
+            PENDING.remove(id);
+            throw e;
+        }
+        return track(request, id, timeout);
+    }
+    
+    private static <T extends Packet> CompletableFuture<T> track(Request<T> request, int id, Duration timeout) {
+        var future = request.future();
+        if(timeout != null) {
+            future.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        }
+        future.whenComplete((result, exception) -> {
+            if(exception instanceof CompletionException) {
+                exception = exception.getCause();
+            }
+            if(exception instanceof CancellationException || exception instanceof TimeoutException) {
+                cancel(id, request);
             }
         });
+        return future;
     }
     
-    static void writePacket(Packet packet) throws IOException {
-        if(sink == null) {
-            throw new IOException("ContainerManager is disabled");
+    private static void cancel(int id, Request<?> request) {
+        if(!PENDING.remove(id, request)) {
+            return;
         }
         
-        int id = PACKET_IDS.getInt(packet.getClass());
-        if(id == -1) {
-            throw new IllegalArgumentException("Packet " + MiscUtil.className(packet.getClass()) + " is not registered");
-        }
-        var packetBuffer = packet.write();
-        var buffer = ByteBuffer.allocateDirect(8 + packetBuffer.remaining())
-            .order(ByteOrder.nativeOrder());
-        buffer.putInt(0, id);
-        buffer.putInt(4, packetBuffer.remaining());
-        if(packetBuffer.hasRemaining()) {
-            buffer.put(8, packetBuffer, 0, packetBuffer.remaining());
+        try {
+            writePacket(new CancelPacket(id));
+        } catch (IOException e) {
+            LOGGER.debug(e, "Failed to cancel request %d", id);
         }
+    }
+    
+    static IpcStream openStream(String path, int window) throws IOException {
+        IpcStream stream;
+        do {
+            stream = new IpcStream(NEXT_STREAM.incrementAndGet(), window);
+        } while (STREAMS.putIfAbsent(stream.id(), stream) != null);
         
-        synchronized (Communications.class) {
-            while(buffer.hasRemaining()) {
-                sink.write(buffer);
-            }
+        try {
+            writePacket(new StreamOpenPacket(stream.id(), window, sharedMemory != null, path));
+        } catch (Throwable e) {
+            STREAMS.remove(stream.id());
+            throw e;
         }
+        return stream;
     }
     
-    static Packet readPacket() throws IOException {
-        if(sink == null) {
-            throw new IOException("ContainerManager is disabled");
+    static void closeStream(IpcStream stream, int status) {
+        if (!STREAMS.remove(stream.id(), stream)) {
+            return;
         }
         
-        int id;
-        int size;
-        var buffer = ByteBuffer.allocateDirect(8).order(ByteOrder.nativeOrder());
-        synchronized (Communications.class) {
-            while(buffer.hasRemaining()) {
-                source.read(buffer);
+        try {
+            writePacket(new StreamClosePacket(stream.id(), status));
+        } catch (IOException e) {
+            LOGGER.debug(e, "Failed to close stream %d", stream.id());
+        }
+    }
+    
+    private static void readStreamPacket(StreamPacket packet) throws IOException {
+        if (packet instanceof StreamDataPacket data) {
+            var stream = STREAMS.get(data.stream());
+            if (stream != null) {
+                stream.onData(data.data());
             }
-            
-            id = buffer.getInt(0);
-            size = buffer.getInt(4);
-            buffer = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
-            
-            while(buffer.hasRemaining()) {
-                source.read(buffer);
+        } else if (packet instanceof BulkTransferPacket bulk) {
+            var memory = sharedMemory;
+            if (memory == null) {
+                throw new IOException("Received a bulk transfer without shared memory");
+            }
+            // The space is released even when the stream is gone, the container doesn't know about that yet.
+            var data = memory.take(bulk.position(), bulk.length());
+            var stream = STREAMS.get(bulk.stream());
+            if (stream != null) {
+                stream.onData(data);
             }
-            buffer.flip();
+        } else if (packet instanceof StreamClosePacket close) {
+            var stream = STREAMS.remove(close.stream());
+            if (stream != null) {
+                stream.onClose(close.status());
+            }
+        } else {
+            LOGGER.warning("Dropping unexpected stream packet %s", MiscUtil.className(packet.getClass()));
+        }
+    }
+    
+    static void openSharedMemory(Duration timeout) throws IOException {
+        var reply = call(new SharedMemoryPacket(), SharedMemoryPacket.class, timeout);
+        sharedMemory = SharedMemory.open(reply.handle(), reply.size());
+    }
+    
+    static void writePacket(Packet packet) throws IOException {
+        writePacket(packet, 0);
+    }
+    
+    private static void writePacket(Packet packet, int request) throws IOException {
+        var writer = Communications.writer;
+        if(writer == null) {
+            throw new IOException("ContainerManager is disabled");
         }
         
-        var factory = PACKET_FACTORIES.get(id);
-        if(factory == null) {
-            throw new IOException("Unknown packet ID: " + id);
+        var type = packetType(packet);
+        var codec = type.codec();
+        int size = codec.size(packet);
+        var buffer = WRITE_BUFFERS.acquire(HEADER_SIZE + size);
+        buffer.putInt(type.id())
+            .putInt(size)
+            .putInt(request);
+        codec.encode(packet, buffer);
+        writer.enqueue(buffer.flip());
+        type.metrics().sent(HEADER_SIZE + size);
+    }
+    
+    private static PacketType<Packet> packetType(Packet packet) {
+        return packetType(packet.getClass());
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static PacketType<Packet> packetType(Class<? extends Packet> packet) {
+        var type = (PacketType<Packet>) PACKETS_BY_TYPE.get(packet);
+        if(type == null) {
+            throw new IllegalArgumentException("Packet " + MiscUtil.className(packet) + " is not registered");
         }
-        var packet = factory.get();
-        packet.read(buffer);
-        return packet;
+        return type;
+    }
+    
+    private static void writerFailed(IOException exception) {
+        LOGGER.error(exception, "Failed to write to the IPC pipe");
+        disable();
+    }
+    
+    // Only ever called from the reader thread, the payload is decoded straight out of the reader's buffer.
+    private static void readPacket(FrameReader reader) throws IOException {
+        var type = PACKETS_BY_ID.get(reader.id());
+        if(type == null) {
+            throw new IOException("Unknown packet ID: " + reader.id());
+        }
+        int size = reader.payload().remaining();
+        Packet packet;
+        try {
+            packet = type.codec().decode(reader.payload());
+        } catch (RuntimeException e) {
+            throw new IOException("Failed to decode packet " + reader.id(), e);
+        }
+        type.metrics().received(HEADER_SIZE + size);
+        
+        if(packet instanceof StreamPacket streamPacket) {
+            readStreamPacket(streamPacket);
+            return;
+        }
+        
+        var pending = PENDING.remove(reader.request());
+        if (pending == null) {
+            if(reader.request() == 0) {
+                LOGGER.warning("Dropping unexpected packet %s", MiscUtil.className(packet.getClass()));
+            } else {
+                // Most likely the reply to a request that timed out or was cancelled.
+                LOGGER.debug("Dropping late packet %s for request %d", MiscUtil.className(packet.getClass()), reader.request());
+            }
+            return;
+        }
+        pending.complete(packet);
+    }
+    
+    static int pendingRequests() {
+        return PENDING.size();
+    }
+    
+    static int openStreams() {
+        return STREAMS.size();
+    }
+    
+    static int queuedFrames() {
+        var writer = Communications.writer;
+        return writer == null ? 0 : writer.queuedFrames();
+    }
+    
+    static int queuedBytes() {
+        var writer = Communications.writer;
+        return writer == null ? 0 : writer.queuedBytes();
     }
     
     public static void disable() {
         synchronized (Communications.class) {
+            if(writer != null) {
+                writer.close();
+                writer = null;
+            }
+            sharedMemory = null;
             if(source != null) {
                 try {
                     source.close();
@@ -172,61 +368,39 @@ public final class Communications {
                 sink = null;
             }
         }
+        failPending(new IOException("ContainerManager is disabled"));
     }
     
-    //FIXME This is one awful hack and a half. Find a better way or actually implement stuff
     public static void init(int readPipe, int writePipe) throws IOException {
-        try {
-            var IOUtil = LookupHelper.findClass("sun.nio.ch.IOUtil");
-            var IOUtil$setfdVal = LookupHelper.findStatic(IOUtil, "setfdVal", MethodType.methodType(void.class, FileDescriptor.class, int.class));
-        
-            var SourceChannelImpl = LookupHelper.findClass("sun.nio.ch.SourceChannelImpl");
-            var SourceChannelImpl$fd = LookupHelper.findSetter(SourceChannelImpl, "fd", FileDescriptor.class);
-            var SourceChannelImpl$fdVal = LookupHelper.findSetter(SourceChannelImpl, "fdVal", int.class);
-            var SourceChannelImpl$readLock = LookupHelper.findSetter(SourceChannelImpl, "readLock", ReentrantLock.class);
-            var SourceChannelImpl$stateLock = LookupHelper.findSetter(SourceChannelImpl, "stateLock", Object.class);
-        
-            var SinkChannelImpl = LookupHelper.findClass("sun.nio.ch.SinkChannelImpl");
-            var SinkChannelImpl$fd = LookupHelper.findSetter(SinkChannelImpl, "fd", FileDescriptor.class);
-            var SinkChannelImpl$fdVal = LookupHelper.findSetter(SinkChannelImpl, "fdVal", int.class);
-            var SinkChannelImpl$writeLock = LookupHelper.findSetter(SinkChannelImpl, "writeLock", ReentrantLock.class);
-            var SinkChannelImpl$stateLock = LookupHelper.findSetter(SinkChannelImpl, "stateLock", Object.class);
-    
-            var AbstractSelectableChannel$keyLock = LookupHelper.findSetter(AbstractSelectableChannel.class, "keyLock", Object.class);
-            var AbstractSelectableChannel$regLock = LookupHelper.findSetter(AbstractSelectableChannel.class, "regLock", Object.class);
-            
-            var AbstractInterruptibleChannel$closeLock = LookupHelper.findSetter(AbstractInterruptibleChannel.class, "closeLock", Object.class);
+        init(InheritedChannels.openSource(readPipe), InheritedChannels.openSink(writePipe));
+    }
+    
+    static void init(ReadableByteChannel source, GatheringByteChannel sink) {
+        synchronized (Communications.class) {
+            if(writer != null) {
+                throw new IllegalStateException("IPC is already initialized");
+            }
             
-            var sourceFd = new FileDescriptor();
-            IOUtil$setfdVal.invokeExact(sourceFd, readPipe);
-            var sourceChannel = UnsafeHelper.allocateInstance(SourceChannelImpl);
-            SourceChannelImpl$fd.invoke(sourceChannel, sourceFd);
-            SourceChannelImpl$fdVal.invoke(sourceChannel, readPipe);
-            SourceChannelImpl$readLock.invoke(sourceChannel, new ReentrantLock());
-            SourceChannelImpl$stateLock.invoke(sourceChannel, new Object());
-            AbstractSelectableChannel$keyLock.invoke(sourceChannel, new Object());
-            AbstractSelectableChannel$regLock.invoke(sourceChannel, new Object());
-            AbstractInterruptibleChannel$closeLock.invoke(sourceChannel, new Object());
-    
-            var sinkFd = new FileDescriptor();
-            IOUtil$setfdVal.invokeExact(sinkFd, writePipe);
-            var sinkChannel = UnsafeHelper.allocateInstance(SinkChannelImpl);
-            SinkChannelImpl$fd.invoke(sinkChannel, sinkFd);
-            SinkChannelImpl$fdVal.invoke(sinkChannel, writePipe);
-            SinkChannelImpl$writeLock.invoke(sinkChannel, new ReentrantLock());
-            SinkChannelImpl$stateLock.invoke(sinkChannel, new Object());
-            AbstractSelectableChannel$keyLock.invoke(sinkChannel, new Object());
-            AbstractSelectableChannel$regLock.invoke(sinkChannel, new Object());
-            AbstractInterruptibleChannel$closeLock.invoke(sinkChannel, new Object());
+            Communications.source = source;
+            Communications.sink = sink;
             
-            source = (Pipe.SourceChannel) sourceChannel;
-            sink = (Pipe.SinkChannel) sinkChannel;
+            var flush = Configuration.IPC_FLUSH_SIZE.get() << 10;
+            writer = new FrameWriter(
+                sink,
+                WRITE_BUFFERS,
+                Communications::writerFailed,
+                flush,
+                TimeUnit.MICROSECONDS.toNanos(Configuration.IPC_FLUSH_DELAY.get()),
+                flush * 4,
+                IpcMetrics.INSTANCE.writerStalls()
+            );
+            writer.start("IPC Writer");
             
             Runtime.getRuntime().addShutdownHook(new Thread(Communications::disable, "IPC Cleanup"));
             
-            thread = new Thread(Communications::packetReader, "IPC Reader");
-        } catch (Throwable e) {
-            throw new RuntimeException("Failed to setup IPC", e);
+            var thread = new Thread(() -> packetReader(source), "IPC Reader");
+            thread.setDaemon(true);
+            thread.start();
         }
     }
     
@@ -1,19 +1,37 @@
 package net.gudenau.launcher.coms;
 
+import net.gudenau.launcher.Versions;
 import net.gudenau.launcher.api.util.Version;
+import net.gudenau.launcher.impl.util.Configuration;
 
 import java.io.IOException;
-import java.util.concurrent.ExecutionException;
+import java.time.Duration;
 
 public final class ContainerControl {
+    private static final int STREAM_WINDOW = 256 * 1024;
+    
+    private static Duration timeout() {
+        return Duration.ofMillis(Configuration.IPC_TIMEOUT.get());
+    }
+    
     public static Version version() throws IOException {
-        var future = Communications.readPacket(ContainerVersionPacket.class);
-        Communications.writePacket(new ContainerVersionPacket());
-        try {
-            return future.get().version();
-        } catch (InterruptedException | ExecutionException e) {
-            throw new RuntimeException("Failed to get container version", e);
-        }
+        return Communications.call(new ContainerVersionPacket(Versions.LAUNCHER_VERSION), ContainerVersionPacket.class, timeout()).version();
+    }
+    
+    public static void openSharedMemory() throws IOException {
+        Communications.openSharedMemory(timeout());
+    }
+    
+    /**
+     * Asks the container to read a file and stream it back. The path is resolved by the container, outside of the
+     * namespace the launcher runs in.
+     *
+     * @param path The file to read
+     * @return The contents of the file, closing it stops the container from reading further
+     * @throws IOException If the request could not be sent
+     */
+    public static IpcStream readFile(String path) throws IOException {
+        return Communications.openStream(path, STREAM_WINDOW);
     }
     
     private ContainerControl() {
@@ -0,0 +1,80 @@
+package net.gudenau.launcher.coms;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads packet frames from a channel into a single reusable direct buffer.
+ *
+ * Reads are greedy, so several small frames usually arrive with one syscall. The payload of the current frame is
+ * exposed in place as the position and limit of {@link #payload()} and is only valid until the next call to
+ * {@link #next()}.
+ */
+final class FrameReader {
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+    
+    // Unread data lives between start and end, the current frame ends at frameEnd.
+    private int start;
+    private int end;
+    private int frameEnd;
+    
+    private int id;
+    private int request;
+    
+    FrameReader(ReadableByteChannel channel, int capacity) {
+        this.channel = channel;
+        buffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+    }
+    
+    void next() throws IOException {
+        start = frameEnd;
+        ensure(Communications.HEADER_SIZE);
+        
+        buffer.limit(end);
+        id = buffer.getInt(start);
+        int size = buffer.getInt(start + 4);
+        request = buffer.getInt(start + 8);
+        if(size < 0 || size > buffer.capacity() - Communications.HEADER_SIZE) {
+            throw new IOException("Packet length was too large or too small: " + size);
+        }
+        ensure(Communications.HEADER_SIZE + size);
+        
+        int payload = start + Communications.HEADER_SIZE;
+        frameEnd = payload + size;
+        buffer.limit(frameEnd).position(payload);
+    }
+    
+    private void ensure(int bytes) throws IOException {
+        while(end - start < bytes) {
+            if(buffer.capacity() - start < bytes) {
+                buffer.limit(end).position(start);
+                buffer.compact();
+                end -= start;
+                frameEnd -= start;
+                start = 0;
+            }
+            
+            buffer.limit(buffer.capacity()).position(end);
+            if(channel.read(buffer) == -1) {
+                throw new EOFException("Container closed the IPC pipe");
+            }
+            end = buffer.position();
+        }
+    }
+    
+    int id() {
+        return id;
+    }
+    
+    int request() {
+        return request;
+    }
+    
+    ByteBuffer payload() {
+        return buffer;
+    }
+}
@@ -0,0 +1,202 @@
+package net.gudenau.launcher.coms;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Queues encoded frames and writes them from a single thread, coalescing everything that is pending into one
+ * gathering write.
+ *
+ * A lone frame is written right away. While more frames are queued a batch is held back until it holds at least
+ * {@code flushBytes} or the oldest frame has waited {@code flushDelay} nanoseconds, whichever happens first. Producers
+ * block once {@code maxQueuedBytes} are waiting, the time they spent
+ * blocked is recorded in {@code stalls}.
+ */
+final class FrameWriter {
+    private static final int MAX_BATCH = 64;
+    
+    private final GatheringByteChannel channel;
+    private final BufferPool pool;
+    private final Consumer<IOException> errorHandler;
+    private final int flushBytes;
+    private final long flushDelay;
+    private final int maxQueuedBytes;
+    private final IpcHistogram stalls;
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition ready = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Deque<ByteBuffer> queue = new ArrayDeque<>();
+    private int queuedBytes;
+    private long oldest;
+    private boolean closed;
+    
+    FrameWriter(
+        GatheringByteChannel channel,
+        BufferPool pool,
+        Consumer<IOException> errorHandler,
+        int flushBytes,
+        long flushDelay,
+        int maxQueuedBytes,
+        IpcHistogram stalls
+    ) {
+        this.channel = channel;
+        this.pool = pool;
+        this.errorHandler = errorHandler;
+        this.flushBytes = flushBytes;
+        this.flushDelay = flushDelay;
+        this.maxQueuedBytes = Math.max(maxQueuedBytes, flushBytes);
+        this.stalls = stalls;
+    }
+    
+    void start(String name) {
+        var thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Queues a frame for writing, the buffer is handed back to the pool once it was written.
+     */
+    void enqueue(ByteBuffer frame) throws IOException {
+        lock.lock();
+        try {
+            if(!closed && queuedBytes >= maxQueuedBytes) {
+                var start = System.nanoTime();
+                do {
+                    notFull.await();
+                } while(!closed && queuedBytes >= maxQueuedBytes);
+                stalls.record(System.nanoTime() - start);
+            }
+            if(closed) {
+                pool.release(frame);
+                throw new IOException("ContainerManager is disabled");
+            }
+            
+            if(queue.isEmpty()) {
+                oldest = System.nanoTime();
+                ready.signal();
+            }
+            queue.addLast(frame);
+            int previous = queuedBytes;
+            queuedBytes += frame.remaining();
+            if(previous < flushBytes && queuedBytes >= flushBytes) {
+                ready.signal();
+            }
+        } catch (InterruptedException e) {
+            pool.release(frame);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while queueing packet", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    int queuedFrames() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    int queuedBytes() {
+        lock.lock();
+        try {
+            return queuedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            ready.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void run() {
+        var batch = new ByteBuffer[MAX_BATCH];
+        try {
+            while(true) {
+                int count = takeBatch(batch);
+                if(count == 0) {
+                    return;
+                }
+                
+                try {
+                    write(batch, count);
+                } finally {
+                    for(int i = 0; i < count; i++) {
+                        pool.release(batch[i]);
+                        batch[i] = null;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            close();
+            errorHandler.accept(e);
+        } catch (InterruptedException e) {
+            close();
+            errorHandler.accept(new IOException("IPC writer was interrupted", e));
+        }
+    }
+    
+    private int takeBatch(ByteBuffer[] batch) throws InterruptedException {
+        lock.lock();
+        try {
+            while(queue.isEmpty()) {
+                if(closed) {
+                    return 0;
+                }
+                ready.await();
+            }
+            
+            // Only a burst is worth waiting for, a lone request should not pay for the delay.
+            var deadline = oldest + flushDelay;
+            while(!closed && queue.size() > 1 && queuedBytes < flushBytes) {
+                var remaining = deadline - System.nanoTime();
+                if(remaining <= 0) {
+                    break;
+                }
+                ready.awaitNanos(remaining);
+            }
+            
+            int count = 0;
+            while(count < batch.length && !queue.isEmpty()) {
+                var frame = queue.pollFirst();
+                queuedBytes -= frame.remaining();
+                batch[count++] = frame;
+            }
+            if(!queue.isEmpty()) {
+                oldest = System.nanoTime();
+            }
+            notFull.signalAll();
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void write(ByteBuffer[] batch, int count) throws IOException {
+        int offset = 0;
+        while(offset < count) {
+            channel.write(batch, offset, count - offset);
+            while(offset < count && !batch[offset].hasRemaining()) {
+                offset++;
+            }
+        }
+    }
+}
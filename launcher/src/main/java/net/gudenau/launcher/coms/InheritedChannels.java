@@ -0,0 +1,82 @@
+package net.gudenau.launcher.coms;
+
+import net.gudenau.launcher.impl.util.LookupHelper;
+import net.gudenau.launcher.impl.util.UnsafeHelper;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.lang.invoke.MethodType;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.spi.AbstractInterruptibleChannel;
+import java.nio.channels.spi.AbstractSelectableChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Opens channels for file handles that were inherited from the container.
+ *
+ * On Linux a handle is reopened through /proc/self/fd, which gives us a regular {@link FileChannel} for the same pipe
+ * without reaching into JDK internals. These channels can't be registered with a selector, but blocking reads don't
+ * hold any locks and closing the channel wakes up any thread that is blocked on it, so a dedicated reader thread is
+ * all we need.
+ *
+ * Other systems have no /proc, there the handle is wrapped in the JDK's own {@link Pipe} channel implementations like
+ * the launcher always did. Those are selectable, but building them depends on JDK internals that may change.
+ */
+final class InheritedChannels {
+    private static final Path PROC_FDS = Path.of("/proc/self/fd");
+    
+    static ReadableByteChannel openSource(int handle) throws IOException {
+        if(Files.isDirectory(PROC_FDS)) {
+            return FileChannel.open(path(handle), StandardOpenOption.READ);
+        }
+        return wrap(handle, "sun.nio.ch.SourceChannelImpl", "readLock");
+    }
+    
+    static GatheringByteChannel openSink(int handle) throws IOException {
+        if(Files.isDirectory(PROC_FDS)) {
+            return FileChannel.open(path(handle), StandardOpenOption.WRITE);
+        }
+        return wrap(handle, "sun.nio.ch.SinkChannelImpl", "writeLock");
+    }
+    
+    private static Path path(int handle) throws IOException {
+        var path = PROC_FDS.resolve(Integer.toString(handle));
+        if(!Files.exists(path)) {
+            throw new IOException("Inherited handle " + handle + " is not open");
+        }
+        return path;
+    }
+    
+    private static <T> T wrap(int handle, String type, String lock) throws IOException {
+        try {
+            var IOUtil = LookupHelper.findClass("sun.nio.ch.IOUtil");
+            var IOUtil$setfdVal = LookupHelper.findStatic(IOUtil, "setfdVal", MethodType.methodType(void.class, FileDescriptor.class, int.class));
+            
+            var fd = new FileDescriptor();
+            IOUtil$setfdVal.invokeExact(fd, handle);
+            
+            Class<T> ChannelImpl = LookupHelper.findClass(type);
+            var channel = UnsafeHelper.allocateInstance(ChannelImpl);
+            LookupHelper.findSetter(ChannelImpl, "fd", FileDescriptor.class).invoke(channel, fd);
+            LookupHelper.findSetter(ChannelImpl, "fdVal", int.class).invoke(channel, handle);
+            LookupHelper.findSetter(ChannelImpl, lock, ReentrantLock.class).invoke(channel, new ReentrantLock());
+            LookupHelper.findSetter(ChannelImpl, "stateLock", Object.class).invoke(channel, new Object());
+            LookupHelper.findSetter(AbstractSelectableChannel.class, "keyLock", Object.class).invoke(channel, new Object());
+            LookupHelper.findSetter(AbstractSelectableChannel.class, "regLock", Object.class).invoke(channel, new Object());
+            LookupHelper.findSetter(AbstractInterruptibleChannel.class, "closeLock", Object.class).invoke(channel, new Object());
+            return channel;
+        } catch (Throwable e) {
+            throw new IOException("Failed to open inherited handle " + handle, e);
+        }
+    }
+    
+    private InheritedChannels() {
+        throw new AssertionError();
+    }
+}
@@ -0,0 +1,93 @@
+package net.gudenau.launcher.coms;
+
+import net.gudenau.launcher.api.util.IpcStatistics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A log-linear histogram of nanosecond values in the spirit of HdrHistogram.
+ *
+ * Every power of two is split into 32 linear buckets, so any recorded value is off by at most ~3%. Recording never
+ * allocates and is safe from any thread, values above ~18 minutes are clamped.
+ */
+final class IpcHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_BITS = 40;
+    private static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+    private static final int BUCKETS = index(MAX_VALUE) + 1;
+    
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong();
+    
+    void record(long value) {
+        value = Math.min(Math.max(value, 0), MAX_VALUE);
+        counts.incrementAndGet(index(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        min.accumulateAndGet(value, Math::min);
+        max.accumulateAndGet(value, Math::max);
+    }
+    
+    // Values below 32 get a bucket each, anything larger keeps its top 6 bits.
+    private static int index(long value) {
+        if(value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS - 1;
+        return SUB_BUCKETS + (shift << SUB_BUCKET_BITS) + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+    
+    private static long highestValue(int index) {
+        if(index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) >>> SUB_BUCKET_BITS;
+        long sub = ((index - SUB_BUCKETS) & (SUB_BUCKETS - 1)) + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+    
+    /**
+     * Takes a consistent enough copy of this histogram, concurrent recordings may or may not be included.
+     */
+    IpcStatistics.Latency snapshot() {
+        var copy = new long[BUCKETS];
+        long total = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            total += copy[i];
+        }
+        if(total == 0) {
+            return new IpcStatistics.Latency(0, 0, 0, 0, 0, 0, 0, 0);
+        }
+        
+        long lowest = min.get();
+        long highest = max.get();
+        return new IpcStatistics.Latency(
+            total,
+            lowest,
+            highest,
+            sum.get() / Math.max(count.get(), 1),
+            percentile(copy, total, 0.5, lowest, highest),
+            percentile(copy, total, 0.9, lowest, highest),
+            percentile(copy, total, 0.99, lowest, highest),
+            percentile(copy, total, 0.999, lowest, highest)
+        );
+    }
+    
+    private static long percentile(long[] counts, long total, double percentile, long lowest, long highest) {
+        long target = Math.max(1, (long) Math.ceil(total * percentile));
+        long seen = 0;
+        for(int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if(seen >= target) {
+                return Math.min(Math.max(highestValue(i), lowest), highest);
+            }
+        }
+        return highest;
+    }
+}
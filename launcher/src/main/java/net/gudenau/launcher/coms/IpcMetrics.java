@@ -0,0 +1,76 @@
+package net.gudenau.launcher.coms;
+
+import net.gudenau.launcher.api.util.IpcStatistics;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latency histograms for the IPC channel, recording is cheap enough to stay enabled all the time.
+ */
+public final class IpcMetrics implements IpcStatistics {
+    public static final IpcMetrics INSTANCE = new IpcMetrics();
+    
+    private final Map<Class<?>, PacketMetrics> packets = new ConcurrentHashMap<>();
+    private final IpcHistogram writerStalls = new IpcHistogram();
+    
+    /**
+     * The counters of a single packet type, the latency is the round trip of requests that start with this packet.
+     */
+    static final class PacketMetrics {
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong received = new AtomicLong();
+        private final AtomicLong bytesSent = new AtomicLong();
+        private final AtomicLong bytesReceived = new AtomicLong();
+        private final IpcHistogram latency = new IpcHistogram();
+        
+        void sent(int bytes) {
+            sent.incrementAndGet();
+            bytesSent.addAndGet(bytes);
+        }
+        
+        void received(int bytes) {
+            received.incrementAndGet();
+            bytesReceived.addAndGet(bytes);
+        }
+        
+        void roundTrip(long nanos) {
+            latency.record(nanos);
+        }
+        
+        private PacketStatistics snapshot() {
+            return new PacketStatistics(sent.get(), received.get(), bytesSent.get(), bytesReceived.get(), latency.snapshot());
+        }
+    }
+    
+    private IpcMetrics() {}
+    
+    PacketMetrics packet(Class<? extends Packet> type) {
+        return packets.computeIfAbsent(type, (ignored) -> new PacketMetrics());
+    }
+    
+    IpcHistogram writerStalls() {
+        return writerStalls;
+    }
+    
+    @Override
+    @NotNull
+    public Snapshot snapshot() {
+        var packets = new TreeMap<String, PacketStatistics>();
+        this.packets.forEach((type, metrics) -> packets.put(type.getSimpleName(), metrics.snapshot()));
+        
+        return new Snapshot(
+            System.nanoTime(),
+            Communications.pendingRequests(),
+            Communications.openStreams(),
+            Communications.queuedFrames(),
+            Communications.queuedBytes(),
+            writerStalls.snapshot(),
+            Collections.unmodifiableMap(packets)
+        );
+    }
+}
@@ -0,0 +1,264 @@
+package net.gudenau.launcher.coms;
+
+import net.gudenau.launcher.api.util.Logger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Flow;
+
+/**
+ * A flow controlled stream of data from the container, like the output of a process or the contents of a file.
+ *
+ * The container may only send as many bytes as we granted it, credit is handed back once half of the window has been
+ * consumed. Data can either be read through the channel or through {@link #publisher()}, but not both.
+ */
+public final class IpcStream implements ReadableByteChannel {
+    private static final Logger LOGGER = Logger.forName("launcher");
+    
+    private final int id;
+    private final int window;
+    
+    private final Deque<ByteBuffer> chunks = new ArrayDeque<>();
+    // Credit the container still has, and bytes we consumed but didn't ack yet.
+    private int credit;
+    private int consumed;
+    private boolean open = true;
+    private boolean finished;
+    private IOException error;
+    
+    private Flow.Subscriber<? super ByteBuffer> subscriber;
+    private long demand;
+    private boolean draining;
+    private boolean completed;
+    
+    IpcStream(int id, int window) {
+        this.id = id;
+        this.window = window;
+        credit = window;
+    }
+    
+    int id() {
+        return id;
+    }
+    
+    int window() {
+        return window;
+    }
+    
+    void onData(byte[] data) {
+        int overrun;
+        synchronized (this) {
+            if(!open || finished) {
+                return;
+            }
+            overrun = data.length - credit;
+            if(overrun <= 0) {
+                credit -= data.length;
+                chunks.addLast(ByteBuffer.wrap(data).asReadOnlyBuffer());
+                notifyAll();
+            }
+        }
+        
+        if(overrun > 0) {
+            finish(new IOException("Container overran stream " + id + " by " + overrun + " bytes"));
+            Communications.closeStream(this, -1);
+        } else {
+            drain();
+        }
+    }
+    
+    void onClose(int status) {
+        finish(status == 0 ? null : new IOException("Container closed stream " + id + " with status " + status));
+    }
+    
+    void finish(IOException exception) {
+        synchronized (this) {
+            if(finished) {
+                return;
+            }
+            finished = true;
+            error = exception;
+            notifyAll();
+        }
+        drain();
+    }
+    
+    @Override
+    public int read(ByteBuffer destination) throws IOException {
+        int read = 0;
+        synchronized (this) {
+            if(subscriber != null) {
+                throw new IllegalStateException("Stream " + id + " is being consumed by a subscriber");
+            }
+            
+            while(open && chunks.isEmpty() && !finished) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while reading stream " + id);
+                }
+            }
+            if(!open) {
+                throw new ClosedChannelException();
+            }
+            if(chunks.isEmpty()) {
+                if(error != null) {
+                    throw error;
+                }
+                return -1;
+            }
+            
+            while(destination.hasRemaining() && !chunks.isEmpty()) {
+                var chunk = chunks.peekFirst();
+                int length = Math.min(chunk.remaining(), destination.remaining());
+                destination.put(destination.position(), chunk, chunk.position(), length);
+                destination.position(destination.position() + length);
+                chunk.position(chunk.position() + length);
+                if(!chunk.hasRemaining()) {
+                    chunks.removeFirst();
+                }
+                read += length;
+            }
+        }
+        consumed(read);
+        return read;
+    }
+    
+    private void consumed(int bytes) throws IOException {
+        int ack;
+        synchronized (this) {
+            consumed += bytes;
+            if(finished || consumed < window >>> 1) {
+                return;
+            }
+            ack = consumed;
+            consumed = 0;
+            credit += ack;
+        }
+        Communications.writePacket(new StreamAckPacket(id, ack));
+    }
+    
+    @Override
+    public synchronized boolean isOpen() {
+        return open;
+    }
+    
+    @Override
+    public void close() {
+        boolean cancel;
+        synchronized (this) {
+            if(!open) {
+                return;
+            }
+            open = false;
+            cancel = !finished;
+            chunks.clear();
+            notifyAll();
+        }
+        if(cancel) {
+            Communications.closeStream(this, 0);
+        }
+    }
+    
+    /**
+     * Gets a publisher for the data of this stream, only a single subscriber is supported. Chunks are delivered on the
+     * IPC reader thread or the thread that requested more, subscribers should hand off any heavy work. A stream that
+     * already finished still delivers what it received and then completes, subscribing to a closed stream fails with a
+     * {@link ClosedChannelException}.
+     */
+    public Flow.Publisher<ByteBuffer> publisher() {
+        return (subscriber) -> {
+            Exception rejection = null;
+            synchronized (this) {
+                if(!open) {
+                    rejection = new ClosedChannelException();
+                } else if(this.subscriber != null) {
+                    rejection = new IllegalStateException("Stream " + id + " already has a consumer");
+                } else {
+                    this.subscriber = subscriber;
+                }
+            }
+            if(rejection != null) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override public void request(long n) {}
+                    @Override public void cancel() {}
+                });
+                subscriber.onError(rejection);
+                return;
+            }
+            
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    if(n <= 0) {
+                        finish(new IOException("Non-positive request: " + n));
+                        close();
+                        return;
+                    }
+                    synchronized (IpcStream.this) {
+                        demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                    }
+                    drain();
+                }
+                
+                @Override
+                public void cancel() {
+                    close();
+                }
+            });
+        };
+    }
+    
+    // Delivers queued chunks to the subscriber, only one thread drains at a time so ordering is kept.
+    private void drain() {
+        Flow.Subscriber<? super ByteBuffer> subscriber;
+        synchronized (this) {
+            if(this.subscriber == null || draining) {
+                return;
+            }
+            draining = true;
+            subscriber = this.subscriber;
+        }
+        
+        while(true) {
+            ByteBuffer chunk = null;
+            IOException failure = null;
+            boolean complete = false;
+            synchronized (this) {
+                if(open && demand > 0 && !chunks.isEmpty()) {
+                    chunk = chunks.removeFirst();
+                    demand--;
+                } else if(chunks.isEmpty() && finished && !completed) {
+                    completed = true;
+                    complete = true;
+                    failure = error;
+                } else {
+                    draining = false;
+                    return;
+                }
+            }
+            
+            if(chunk != null) {
+                int length = chunk.remaining();
+                subscriber.onNext(chunk);
+                try {
+                    consumed(length);
+                } catch (IOException e) {
+                    LOGGER.warning(e, "Failed to ack stream %d", id);
+                }
+            } else if(complete) {
+                if(failure == null) {
+                    subscriber.onComplete();
+                } else {
+                    subscriber.onError(failure);
+                }
+            }
+        }
+    }
+}
@@ -1,8 +1,6 @@
 package net.gudenau.launcher.coms;
 
-import java.nio.ByteBuffer;
-
-interface Packet {
-    void read(ByteBuffer buffer);
-    ByteBuffer write();
-}
+/**
+ * The marker for packet records, the wire format is derived from the record components by {@link PacketCodecs}.
+ */
+interface Packet {}
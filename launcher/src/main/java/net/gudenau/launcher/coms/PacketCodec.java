@@ -0,0 +1,25 @@
+package net.gudenau.launcher.coms;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes and decodes a single packet type, implementations are generated by {@link PacketCodecs}.
+ *
+ * @param <T> The packet type
+ */
+interface PacketCodec<T extends Packet> {
+    /**
+     * Gets the encoded size of a packet in bytes.
+     */
+    int size(T packet);
+    
+    /**
+     * Writes a packet at the current position of the buffer.
+     */
+    void encode(T packet, ByteBuffer buffer);
+    
+    /**
+     * Reads a packet from the current position of the buffer.
+     */
+    T decode(ByteBuffer buffer);
+}
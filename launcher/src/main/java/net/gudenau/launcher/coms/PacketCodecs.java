@@ -0,0 +1,260 @@
+package net.gudenau.launcher.coms;
+
+import net.gudenau.launcher.impl.util.MiscUtil;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.RecordComponent;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Generates {@link PacketCodec}s for packet records.
+ *
+ * Every component is written in declaration order without any padding, nested records are flattened. The generated
+ * code is straight line calls to the {@link ByteBuffer} accessors and the canonical constructors, so there is no
+ * reflection or boxing once a codec exists. Supported component types are primitives, records made of supported types,
+ * {@link String}s and byte arrays, the variable sized ones are prefixed with their length as an int.
+ */
+final class PacketCodecs {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    
+    private static final String CODEC = Type.getInternalName(PacketCodec.class);
+    private static final String CODECS = Type.getInternalName(PacketCodecs.class);
+    private static final String BUFFER = Type.getInternalName(ByteBuffer.class);
+    private static final String BUFFER_DESC = Type.getDescriptor(ByteBuffer.class);
+    private static final String PACKET_DESC = Type.getDescriptor(Packet.class);
+    
+    @SuppressWarnings("unchecked")
+    static <T extends Record & Packet> PacketCodec<T> generate(Class<T> type) {
+        try {
+            var bytes = generateClass(type);
+            var codec = LOOKUP.defineHiddenClass(bytes, true).lookupClass();
+            return (PacketCodec<T>) codec.getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Failed to generate codec for " + MiscUtil.className(type), e);
+        }
+    }
+    
+    private static byte[] generateClass(Class<?> type) throws IllegalAccessException {
+        var leaves = new ArrayList<Leaf>();
+        flatten(type, List.of(), leaves);
+        
+        var packet = Type.getInternalName(type);
+        var name = Type.getInternalName(PacketCodecs.class) + '$' + type.getSimpleName();
+        var writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(V17, ACC_FINAL | ACC_SYNTHETIC, name, null, "java/lang/Object", new String[]{CODEC});
+        
+        var method = writer.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        method.visitCode();
+        method.visitVarInsn(ALOAD, 0);
+        method.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        method.visitInsn(RETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+        
+        // int size(Packet packet)
+        method = writer.visitMethod(ACC_PUBLIC, "size", "(" + PACKET_DESC + ")I", null, null);
+        method.visitCode();
+        int fixed = 0;
+        for (var leaf : leaves) {
+            fixed += leaf.fixedSize();
+        }
+        method.visitLdcInsn(fixed);
+        for (var leaf : leaves) {
+            if (leaf.fixedSize() == 0) {
+                loadValue(method, packet, leaf);
+                method.visitMethodInsn(INVOKESTATIC, CODECS, "sizeOf", "(" + Type.getDescriptor(leaf.type()) + ")I", false);
+                method.visitInsn(IADD);
+            }
+        }
+        method.visitInsn(IRETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+        
+        // void encode(Packet packet, ByteBuffer buffer)
+        method = writer.visitMethod(ACC_PUBLIC, "encode", "(" + PACKET_DESC + BUFFER_DESC + ")V", null, null);
+        method.visitCode();
+        for (var leaf : leaves) {
+            method.visitVarInsn(ALOAD, 2);
+            loadValue(method, packet, leaf);
+            var put = accessor(leaf.type());
+            if (put == null) {
+                method.visitMethodInsn(INVOKESTATIC, CODECS, "put", "(" + BUFFER_DESC + Type.getDescriptor(leaf.type()) + ")V", false);
+            } else {
+                method.visitMethodInsn(INVOKEVIRTUAL, BUFFER, "put" + put.name(), "(" + put.descriptor() + ")" + BUFFER_DESC, false);
+                method.visitInsn(POP);
+            }
+        }
+        method.visitInsn(RETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+        
+        // Packet decode(ByteBuffer buffer)
+        method = writer.visitMethod(ACC_PUBLIC, "decode", "(" + BUFFER_DESC + ")" + PACKET_DESC, null, null);
+        method.visitCode();
+        construct(method, type);
+        method.visitInsn(ARETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+        
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+    
+    /**
+     * A primitive or variable sized value in the flattened packet, along with the accessors to reach it.
+     */
+    private record Leaf(List<RecordComponent> path, Class<?> type) {
+        int fixedSize() {
+            if (type == boolean.class || type == byte.class) {
+                return Byte.BYTES;
+            } else if (type == short.class || type == char.class) {
+                return Short.BYTES;
+            } else if (type == int.class || type == float.class) {
+                return Integer.BYTES;
+            } else if (type == long.class || type == double.class) {
+                return Long.BYTES;
+            } else {
+                return 0;
+            }
+        }
+    }
+    
+    private record Accessor(String name, String descriptor) {}
+    
+    private static Accessor accessor(Class<?> type) {
+        if (type == byte.class) {
+            return new Accessor("", "B");
+        } else if (type == short.class) {
+            return new Accessor("Short", "S");
+        } else if (type == char.class) {
+            return new Accessor("Char", "C");
+        } else if (type == int.class) {
+            return new Accessor("Int", "I");
+        } else if (type == long.class) {
+            return new Accessor("Long", "J");
+        } else if (type == float.class) {
+            return new Accessor("Float", "F");
+        } else if (type == double.class) {
+            return new Accessor("Double", "D");
+        } else {
+            // Booleans, strings and arrays go through the helpers below.
+            return null;
+        }
+    }
+    
+    private static void flatten(Class<?> type, List<RecordComponent> path, List<Leaf> leaves) throws IllegalAccessException {
+        LOOKUP.accessClass(type);
+        for (var component : type.getRecordComponents()) {
+            var componentType = component.getType();
+            var componentPath = new ArrayList<>(path);
+            componentPath.add(component);
+            
+            if (componentType.isRecord()) {
+                flatten(componentType, componentPath, leaves);
+            } else if (componentType.isPrimitive() || componentType == String.class || componentType == byte[].class) {
+                leaves.add(new Leaf(List.copyOf(componentPath), componentType));
+            } else {
+                throw new IllegalArgumentException(
+                    "Unsupported packet component " + MiscUtil.className(type) + "." + component.getName() + ": " +
+                    componentType.getName()
+                );
+            }
+        }
+    }
+    
+    private static void loadValue(MethodVisitor method, String packet, Leaf leaf) {
+        method.visitVarInsn(ALOAD, 1);
+        method.visitTypeInsn(CHECKCAST, packet);
+        for (var component : leaf.path()) {
+            method.visitMethodInsn(
+                INVOKEVIRTUAL,
+                Type.getInternalName(component.getDeclaringRecord()),
+                component.getName(),
+                "()" + Type.getDescriptor(component.getType()),
+                false
+            );
+        }
+    }
+    
+    private static void construct(MethodVisitor method, Class<?> type) {
+        var owner = Type.getInternalName(type);
+        method.visitTypeInsn(NEW, owner);
+        method.visitInsn(DUP);
+        
+        var components = type.getRecordComponents();
+        var parameters = new Type[components.length];
+        for (int i = 0; i < components.length; i++) {
+            var componentType = components[i].getType();
+            parameters[i] = Type.getType(componentType);
+            
+            if (componentType.isRecord()) {
+                construct(method, componentType);
+                continue;
+            }
+            
+            method.visitVarInsn(ALOAD, 1);
+            var get = accessor(componentType);
+            if (get == null) {
+                var descriptor = Type.getDescriptor(componentType);
+                var name = "get" + (componentType == boolean.class ? "Boolean" : componentType == String.class ? "String" : "Bytes");
+                method.visitMethodInsn(INVOKESTATIC, CODECS, name, "(" + BUFFER_DESC + ")" + descriptor, false);
+            } else {
+                method.visitMethodInsn(INVOKEVIRTUAL, BUFFER, "get" + get.name(), "()" + get.descriptor(), false);
+            }
+        }
+        
+        method.visitMethodInsn(INVOKESPECIAL, owner, "<init>", Type.getMethodDescriptor(Type.VOID_TYPE, parameters), false);
+    }
+    
+    // Helpers for the types that don't map to a single ByteBuffer call, called from generated code.
+    
+    static int sizeOf(String value) {
+        return Integer.BYTES + value.getBytes(StandardCharsets.UTF_8).length;
+    }
+    
+    static int sizeOf(byte[] value) {
+        return Integer.BYTES + value.length;
+    }
+    
+    static void put(ByteBuffer buffer, boolean value) {
+        buffer.put((byte) (value ? 1 : 0));
+    }
+    
+    static void put(ByteBuffer buffer, String value) {
+        put(buffer, value.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    static void put(ByteBuffer buffer, byte[] value) {
+        buffer.putInt(value.length).put(value);
+    }
+    
+    static boolean getBoolean(ByteBuffer buffer) {
+        return buffer.get() != 0;
+    }
+    
+    static String getString(ByteBuffer buffer) {
+        return new String(getBytes(buffer), StandardCharsets.UTF_8);
+    }
+    
+    static byte[] getBytes(ByteBuffer buffer) {
+        var length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Array length out of range: " + length);
+        }
+        var value = new byte[length];
+        buffer.get(value);
+        return value;
+    }
+    
+    private PacketCodecs() {
+        throw new AssertionError();
+    }
+}
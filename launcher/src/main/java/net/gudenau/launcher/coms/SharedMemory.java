@@ -0,0 +1,95 @@
+package net.gudenau.launcher.coms;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.TreeMap;
+
+/**
+ * The memfd backed region the container shares with us for bulk transfers, see container/include/SharedMemory.h for
+ * the layout.
+ *
+ * The region holds a single ring that carries stream data from the container. Transfers are placed in the ring and
+ * announced with a {@link BulkTransferPacket} over the pipe, the reader thread copies them out and releases them right
+ * away so a stream that is read slowly never holds up the space of the others.
+ */
+final class SharedMemory {
+    private static final int RING_HEADER_SIZE = 128;
+    private static final int RING_HEAD = 0;
+    private static final int RING_TAIL = 64;
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    
+    private final ByteBuffer header;
+    private final ByteBuffer data;
+    private final int capacity;
+    
+    // Transfers that were released before an earlier one, keyed by position.
+    private final TreeMap<Long, Long> released = new TreeMap<>();
+    
+    private SharedMemory(MappedByteBuffer memory) {
+        header = memory.slice(0, RING_HEADER_SIZE).order(ByteOrder.nativeOrder());
+        data = memory.slice(RING_HEADER_SIZE, memory.capacity() - RING_HEADER_SIZE);
+        capacity = data.capacity();
+    }
+    
+    static SharedMemory open(int handle, long size) throws IOException {
+        if(size <= RING_HEADER_SIZE || size > Integer.MAX_VALUE) {
+            throw new IOException("Shared memory size out of range: " + size);
+        }
+        
+        // The handle was inherited from the container, this is the only way to get at it without native code.
+        try(var channel = FileChannel.open(Path.of("/proc/self/fd", Integer.toString(handle)), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new SharedMemory(channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+    }
+    
+    /**
+     * Copies a transfer out of the ring and hands its space back to the container.
+     */
+    byte[] take(long position, int length) throws IOException {
+        var head = (long) LONG.getAcquire(header, RING_HEAD);
+        if(length < 0 || length > capacity || position < (long) LONG.getOpaque(header, RING_TAIL) || end(position, length) > head) {
+            throw new IOException("Bulk transfer out of bounds: " + position + "+" + length);
+        }
+        
+        var bytes = new byte[length];
+        data.get(offset(position, length), bytes);
+        release(position, length);
+        return bytes;
+    }
+    
+    private void release(long position, int length) {
+        // Empty transfers share their position with the next one and never own any space.
+        if(length == 0) {
+            return;
+        }
+        
+        synchronized (released) {
+            var tail = (long) LONG.getOpaque(header, RING_TAIL);
+            released.put(position, end(position, length));
+            
+            Long end;
+            while((end = released.remove(tail)) != null) {
+                tail = end;
+            }
+            LONG.setRelease(header, RING_TAIL, tail);
+        }
+    }
+    
+    // Transfers never wrap, if one doesn't fit the producer skips the rest of the ring.
+    private int offset(long position, int length) {
+        var offset = (int) (position % capacity);
+        return capacity - offset < length ? 0 : offset;
+    }
+    
+    private long end(long position, int length) {
+        var offset = (int) (position % capacity);
+        return capacity - offset < length ? position + (capacity - offset) + length : position + length;
+    }
+}
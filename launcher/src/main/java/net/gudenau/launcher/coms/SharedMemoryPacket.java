@@ -0,0 +1,10 @@
+package net.gudenau.launcher.coms;
+
+/**
+ * Sent empty, the container replies with the inherited handle and the size of the shared memory region.
+ */
+record SharedMemoryPacket(int handle, long size) implements Packet {
+    SharedMemoryPacket() {
+        this(-1, 0);
+    }
+}
@@ -0,0 +1,6 @@
+package net.gudenau.launcher.coms;
+
+/**
+ * Grants the container more credit after we consumed some of the stream.
+ */
+record StreamAckPacket(int stream, int credit) implements StreamPacket {}
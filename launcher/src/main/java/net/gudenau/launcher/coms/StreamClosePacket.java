@@ -0,0 +1,6 @@
+package net.gudenau.launcher.coms;
+
+/**
+ * Ends a stream, the container sends it when it is out of data and we send it to cancel. A status of 0 is a clean end.
+ */
+record StreamClosePacket(int stream, int status) implements StreamPacket {}
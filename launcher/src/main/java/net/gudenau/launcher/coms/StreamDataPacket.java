@@ -0,0 +1,6 @@
+package net.gudenau.launcher.coms;
+
+/**
+ * A chunk of stream data from the container, it may never send more than the credit we granted.
+ */
+record StreamDataPacket(int stream, byte[] data) implements StreamPacket {}
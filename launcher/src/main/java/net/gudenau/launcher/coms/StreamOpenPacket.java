@@ -0,0 +1,7 @@
+package net.gudenau.launcher.coms;
+
+/**
+ * Asks the container to stream a file, along with the amount of bytes it may send before waiting for an ack and if the
+ * data may be sent through {@link SharedMemory}.
+ */
+record StreamOpenPacket(int stream, int window, boolean bulk, String path) implements StreamPacket {}
@@ -0,0 +1,8 @@
+package net.gudenau.launcher.coms;
+
+/**
+ * A frame that belongs to an {@link IpcStream} instead of a request.
+ */
+interface StreamPacket extends Packet {
+    int stream();
+}
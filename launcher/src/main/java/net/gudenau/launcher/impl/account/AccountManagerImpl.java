@@ -27,7 +27,7 @@ public final class AccountManagerImpl implements AccountManager {
     
     private final SharedLock profilesLock = new SharedLock();
     private final Map<Profile, List<Account>> profiles = new HashMap<>();
-    private final Map<UUID, AccountProviderWrapper> accountProviders;
+    private volatile Map<UUID, AccountProviderWrapper> accountProviders;
     
     private AccountManagerImpl() {
         synchronized (AccountManagerImpl.class) {
@@ -37,12 +37,9 @@ public final class AccountManagerImpl implements AccountManager {
             INSTANCE = this;
         }
     
-        accountProviders = PluginLoader.services(AccountProvider.class)
-            .map(AccountProviderWrapper::new)
-            .collect(Collectors.toUnmodifiableMap(
-                AccountProvider::id,
-                Function.identity()
-            ));
+        accountProviders = findProviders();
+        // Providers of reloaded plugins are new instances from new class loaders, the old ones must not be used.
+        PluginLoader.registerReloadListener(() -> accountProviders = findProviders());
         
         try {
             load();
@@ -52,6 +49,15 @@ public final class AccountManagerImpl implements AccountManager {
         AutoSaver.registerSaver(this::save);
     }
     
+    private static Map<UUID, AccountProviderWrapper> findProviders() {
+        return PluginLoader.services(AccountProvider.class)
+            .map(AccountProviderWrapper::new)
+            .collect(Collectors.toUnmodifiableMap(
+                AccountProvider::id,
+                Function.identity()
+            ));
+    }
+    
     private void load() throws IOException {
         for (var profile : ProfileManager.profiles()) {
             var accountJson = profile.path("accounts.json");
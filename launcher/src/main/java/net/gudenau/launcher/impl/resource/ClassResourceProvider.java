@@ -4,6 +4,7 @@ import net.gudenau.launcher.api.resource.Identifier;
 import net.gudenau.launcher.api.resource.ResourceProvider;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.file.*;
@@ -13,7 +14,7 @@ import java.util.Set;
 
 import static net.gudenau.launcher.impl.util.MiscUtil.className;
 
-public class ClassResourceProvider implements ResourceProvider {
+public class ClassResourceProvider implements ResourceProvider, Closeable {
     private final String namespace;
     private final FileSystem fileSystem;
     private final Path root;
@@ -52,4 +53,13 @@ public class ClassResourceProvider implements ResourceProvider {
     public @NotNull Path getPath(@NotNull Identifier identifier) {
         return root.resolve(identifier.namespace()).resolve(identifier.path());
     }
+    
+    @Override
+    public void close() throws IOException {
+        try {
+            fileSystem.close();
+        } catch (NoSuchFileException ignored) {
+            // The zip file system looks up the jar after it closed it, deleted jars are expected when plugins reload.
+        }
+    }
 }
@@ -41,6 +41,20 @@ public final class ResourceManagerImpl implements ResourceManager {
         });
     }
     
+    @Override
+    public void unregisterProvider(@NotNull String namespace) {
+        Objects.requireNonNull(namespace, "namespace can't be null");
+        
+        var provider = resourceProvidersLock.write(() -> resourceProviders.remove(namespace));
+        if (provider instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to close provider for namespace " + namespace, e);
+            }
+        }
+    }
+    
     @Override
     @NotNull
     public Path getPath(@NotNull Identifier identifier) {
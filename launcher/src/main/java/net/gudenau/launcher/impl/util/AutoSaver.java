@@ -53,7 +53,7 @@ public final class AutoSaver {
     private static void save() {
         synchronized (SAVERS) {
             Set<IOException> exceptions = new HashSet<>();
-            ThreadUtil.waitFor(SAVERS.stream().<Runnable>map((task) -> () -> {
+            ThreadUtil.waitFor(ThreadUtil.Priority.BLOCKING, SAVERS.stream().<Runnable>map((task) -> () -> {
                 try {
                     task.runExceptionally();
                 } catch (IOException e) {
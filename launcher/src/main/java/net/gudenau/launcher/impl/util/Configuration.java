@@ -36,7 +36,18 @@ public final class Configuration<T> {
     
     public static final Configuration<Boolean> DISABLE_HIDING = bool("disable_hiding", false);
     public static final Configuration<Integer> THREAD_COUNT = integer("thread_count", Runtime.getRuntime().availableProcessors() << 1);
+    public static final Configuration<Boolean> VIRTUAL_THREADS = bool("virtual_threads", true);
     public static final Configuration<String> LOG_LEVEL = string("log_level", "debug");
+    public static final Configuration<Integer> IPC_FLUSH_SIZE = integer("ipc_flush_kib", 32);
+    public static final Configuration<Integer> IPC_FLUSH_DELAY = integer("ipc_flush_delay_us", 50);
+    public static final Configuration<Integer> IPC_TIMEOUT = integer("ipc_timeout_ms", 5000);
+    public static final Configuration<Boolean> PLUGIN_HOT_RELOAD = bool("plugin_hot_reload", false);
+    public static final Configuration<Integer> PLUGIN_PROFILE_HISTORY = integer("plugin_profile_history", 10);
+    public static final Configuration<Integer> PLUGIN_THREAD_LIMIT = integer("plugin_thread_limit", 2);
+    public static final Configuration<Integer> PLUGIN_QUEUE_LIMIT = integer("plugin_queue_limit", 1024);
+    public static final Configuration<Integer> PLUGIN_MAX_THREADS = integer("plugin_max_threads", 16);
+    public static final Configuration<Integer> PLUGIN_CPU_LIMIT = integer("plugin_cpu_limit_ms", 5000);
+    public static final Configuration<Integer> PLUGIN_ALLOCATION_LIMIT = integer("plugin_allocation_limit_mb", 1024);
     
     private static final Path CONFIG_PATH = MiscUtil.getPath("configuration.json");
     static {
@@ -4,73 +4,329 @@ import net.gudenau.launcher.api.util.Logger;
 import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+/**
+ * The worker pool of the launcher.
+ *
+ * Every worker has a deque per lane, tasks submitted from a worker go to the front of its own deque and everything
+ * else goes to a shared queue per lane. A worker takes from its own deque first, then from the shared queue and then
+ * steals from the back of the deques of other workers, always from the most important lane that has work.
+ *
+ * Blocking work can run on virtual threads instead, see {@link Priority#BLOCKING}.
+ */
 public final class ThreadUtil {
     private static final Logger LOGGER = Logger.forName("launcher");
-    private static final BlockingQueue<Runnable> TASKS = new LinkedBlockingQueue<>();
-    private static final Executor EXECUTOR = ThreadUtil::enqueue;
-    private static final int THREAD_COUNT = Configuration.THREAD_COUNT.get();
-    private static volatile boolean shouldRun = true;
-    private static Thread[] THREADS;
+    private static final int THREAD_COUNT = Math.max(1, Configuration.THREAD_COUNT.get());
+    // Every this many tasks a worker looks at the least important lane first, so background work can't starve.
+    private static final int FAIRNESS_INTERVAL = 16;
+    private static final long IDLE_TIMEOUT = TimeUnit.SECONDS.toNanos(1);
     
-    static {
-        Runnable handler = ThreadUtil::thread;
-        var group = new ThreadGroup("Workers");
-        group.setMaxPriority(Thread.NORM_PRIORITY - 1);
+    /**
+     * The lanes of the worker pool.
+     */
+    public enum Priority {
+        /**
+         * Work the UI is waiting on.
+         */
+        UI,
+        /**
+         * Work that spends most of its time waiting on files or the network.
+         */
+        IO,
+        /**
+         * Work that blocks for a long time, like downloads. Every task gets a virtual thread of its own when the JVM
+         * has them and they are enabled, so any amount of them can wait at once. Otherwise they get a lane of their own
+         * right after IO work.
+         */
+        BLOCKING,
+        /**
+         * Everything else.
+         */
+        BACKGROUND;
+        
+        private static final Priority[] VALUES = values();
+    }
+    
+    /**
+     * The state of the worker pool, all times are in nanoseconds.
+     *
+     * @param workers The amount of workers
+     * @param restarts The amount of workers that died and were replaced
+     * @param lanes The state of every lane
+     */
+    public record Statistics(int workers, long restarts, @NotNull Map<Priority, LaneStatistics> lanes) {}
+    
+    /**
+     * The state of a single lane, all times are in nanoseconds.
+     *
+     * @param queued The amount of tasks waiting for a worker
+     * @param completed The amount of tasks that finished
+     * @param failed The amount of tasks that threw
+     * @param meanWait How long tasks waited for a worker on average
+     * @param maxWait The longest a task waited for a worker
+     */
+    public record LaneStatistics(int queued, long completed, long failed, long meanWait, long maxWait) {}
+    
+    private record Task(@NotNull Runnable task, @NotNull Priority priority, long queued) {}
+    
+    private static final class Lane {
+        private final ConcurrentLinkedQueue<Task> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger depth = new AtomicInteger();
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder waited = new LongAdder();
+        private final AtomicLong maxWait = new AtomicLong();
+        
+        private LaneStatistics statistics() {
+            var done = completed.sum() + failed.sum();
+            return new LaneStatistics(
+                depth.get(),
+                completed.sum(),
+                failed.sum(),
+                done == 0 ? 0 : waited.sum() / done,
+                maxWait.get()
+            );
+        }
+    }
+    
+    private static final class Worker extends Thread {
+        private final int index;
+        private final Deque<Task>[] local;
+        private final AtomicBoolean idle = new AtomicBoolean();
+        private int taken = 0;
+        
+        private Worker(int index, Deque<Task>[] local) {
+            super(GROUP, "Worker" + index);
+            this.index = index;
+            this.local = local;
+            setDaemon(true);
+        }
+        
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    var task = find();
+                    if (task == null) {
+                        idle.set(true);
+                        IDLE.add(this);
+                        // Anything submitted before we were on the idle queue did not wake anyone.
+                        task = find();
+                        if (task == null) {
+                            LockSupport.parkNanos(this, IDLE_TIMEOUT);
+                            if (idle.getAndSet(false)) {
+                                IDLE.remove(this);
+                            }
+                            continue;
+                        }
+                        if (idle.getAndSet(false)) {
+                            IDLE.remove(this);
+                        } else {
+                            // Someone woke us for a task while we found another one, pass it on.
+                            wake();
+                        }
+                    }
+                    execute(task);
+                }
+            } catch (Throwable e) {
+                LOGGER.error(e, "Worker %s died", getName());
+            } finally {
+                restart(this);
+            }
+        }
+        
+        private Task find() {
+            var reverse = taken % FAIRNESS_INTERVAL == FAIRNESS_INTERVAL - 1;
+            for (int i = 0; i < LANES.length; i++) {
+                var lane = reverse ? LANES.length - 1 - i : i;
+                var task = local[lane].pollFirst();
+                if (task == null) {
+                    task = LANES[lane].queue.poll();
+                }
+                if (task == null) {
+                    task = steal(lane);
+                }
+                if (task != null) {
+                    LANES[lane].depth.decrementAndGet();
+                    taken++;
+                    return task;
+                }
+            }
+            return null;
+        }
+        
+        private Task steal(int lane) {
+            var start = ThreadLocalRandom.current().nextInt(THREAD_COUNT);
+            for (int i = 0; i < THREAD_COUNT; i++) {
+                var victim = WORKERS.get((start + i) % THREAD_COUNT);
+                if (victim != this && victim != null) {
+                    var task = victim.local[lane].pollLast();
+                    if (task != null) {
+                        return task;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+    
+    private static final ThreadGroup GROUP = new ThreadGroup("Workers");
+    private static final Lane[] LANES = Stream.of(Priority.VALUES).map((priority) -> new Lane()).toArray(Lane[]::new);
+    private static final AtomicReferenceArray<Worker> WORKERS = new AtomicReferenceArray<>(THREAD_COUNT);
+    private static final ConcurrentLinkedQueue<Worker> IDLE = new ConcurrentLinkedQueue<>();
+    private static final AtomicLong RESTARTS = new AtomicLong();
+    private static final Executor[] EXECUTORS = Stream.of(Priority.VALUES)
+        .map((priority) -> (Executor) (task) -> enqueue(priority, task))
+        .toArray(Executor[]::new);
+    
+    // We build against a Java version without virtual threads, they are used when the JVM we run on has them.
+    private static final Executor VIRTUAL = virtualExecutor();
     
-        THREADS = new Thread[THREAD_COUNT];
+    static {
+        GROUP.setMaxPriority(Thread.NORM_PRIORITY - 1);
+        
         for (int i = 0; i < THREAD_COUNT; i++) {
-            var thread = new Thread(group, handler, "Worker" + i);
-            thread.setDaemon(true);
-            thread.start();
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            Deque<Task>[] local = new Deque[LANES.length];
+            for (int lane = 0; lane < local.length; lane++) {
+                local[lane] = new ConcurrentLinkedDeque<>();
+            }
+            var worker = new Worker(i, local);
+            WORKERS.set(i, worker);
+            worker.start();
         }
+        
+        LOGGER.debug("Virtual threads are %s", VIRTUAL == null ? "not available" : "available");
     }
     
-    private static void enqueue(Runnable job) {
+    private static Executor virtualExecutor() {
         try {
-            TASKS.put(job);
-        } catch (InterruptedException e) {
-            throw new RuntimeException("Failed to enqueue job: " + job, e);
+            return (Executor) MethodHandles.publicLookup().findStatic(
+                Executors.class,
+                "newVirtualThreadPerTaskExecutor",
+                MethodType.methodType(ExecutorService.class)
+            ).invoke();
+        } catch (Throwable e) {
+            // Missing before Java 19 and unsupported before Java 21 without preview features.
+            return null;
         }
     }
     
-    private static void thread() {
-        while (shouldRun) {
-            Runnable task;
-            try {
-                task = TASKS.take();
-            } catch (InterruptedException e) {
-                LOGGER.error(e, "Failed to take job");
-                continue;
-            }
-            try {
-                task.run();
-            } catch (Throwable t) {
-                throw new RuntimeException("Failed to execute task: " + task, t);
+    private static void enqueue(Priority priority, Runnable job) {
+        var task = new Task(job, priority, System.nanoTime());
+        var lane = LANES[priority.ordinal()];
+        lane.depth.incrementAndGet();
+        if (priority == Priority.BLOCKING && VIRTUAL != null && Configuration.VIRTUAL_THREADS.get()) {
+            VIRTUAL.execute(() -> {
+                lane.depth.decrementAndGet();
+                execute(task);
+            });
+            return;
+        }
+        if (Thread.currentThread() instanceof Worker worker) {
+            worker.local[priority.ordinal()].addFirst(task);
+        } else {
+            lane.queue.add(task);
+        }
+        wake();
+    }
+    
+    private static void wake() {
+        Worker worker;
+        while ((worker = IDLE.poll()) != null) {
+            if (worker.idle.compareAndSet(true, false)) {
+                LockSupport.unpark(worker);
+                return;
             }
         }
     }
     
+    private static void execute(Task task) {
+        var lane = LANES[task.priority().ordinal()];
+        var waited = System.nanoTime() - task.queued();
+        lane.waited.add(waited);
+        lane.maxWait.accumulateAndGet(waited, Math::max);
+        try {
+            task.task().run();
+            lane.completed.increment();
+        } catch (Throwable e) {
+            lane.failed.increment();
+            LOGGER.error(e, "Failed to execute task: %s", task.task());
+        }
+    }
+    
+    // The replacement takes over the deques of the dead worker, nothing that was queued there is lost.
+    private static void restart(Worker worker) {
+        RESTARTS.incrementAndGet();
+        var replacement = new Worker(worker.index, worker.local);
+        WORKERS.set(worker.index, replacement);
+        replacement.start();
+    }
+    
+    /**
+     * Gets the state of the worker pool.
+     *
+     * @return The current statistics
+     */
+    @NotNull
+    public static Statistics statistics() {
+        var lanes = new EnumMap<Priority, LaneStatistics>(Priority.class);
+        for (var priority : Priority.VALUES) {
+            lanes.put(priority, LANES[priority.ordinal()].statistics());
+        }
+        return new Statistics(THREAD_COUNT, RESTARTS.get(), lanes);
+    }
+    
+    @NotNull
+    public static Executor executor(@NotNull Priority priority) {
+        return EXECUTORS[priority.ordinal()];
+    }
+    
     @NotNull
     public static CompletableFuture<Void> submit(@NotNull Runnable task) {
-        return CompletableFuture.runAsync(task, EXECUTOR);
+        return submit(Priority.BACKGROUND, task);
     }
     
     @NotNull
     public static <T> CompletableFuture<T> submit(@NotNull Supplier<T> task) {
-        return CompletableFuture.supplyAsync(task, EXECUTOR);
+        return submit(Priority.BACKGROUND, task);
+    }
+    
+    @NotNull
+    public static CompletableFuture<Void> submit(@NotNull Priority priority, @NotNull Runnable task) {
+        return CompletableFuture.runAsync(task, executor(priority));
+    }
+    
+    @NotNull
+    public static <T> CompletableFuture<T> submit(@NotNull Priority priority, @NotNull Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, executor(priority));
     }
     
     public static void waitFor(Collection<Runnable> jobs) {
+        waitFor(Priority.BACKGROUND, jobs);
+    }
+    
+    public static void waitFor(Runnable... jobs) {
+        waitFor(Priority.BACKGROUND, jobs);
+    }
+    
+    public static void waitFor(@NotNull Priority priority, Collection<Runnable> jobs) {
         try {
             CompletableFuture.allOf(jobs.stream()
-                .map(ThreadUtil::submit)
+                .map((job) -> submit(priority, job))
                 .toArray(CompletableFuture[]::new)
             ).get();
         } catch (InterruptedException | ExecutionException e) {
@@ -84,10 +340,10 @@ public final class ThreadUtil {
         }
     }
     
-    public static void waitFor(Runnable... jobs) {
+    public static void waitFor(@NotNull Priority priority, Runnable... jobs) {
         try {
             CompletableFuture.allOf(Stream.of(jobs)
-                .map(ThreadUtil::submit)
+                .map((job) -> submit(priority, job))
                 .toArray(CompletableFuture[]::new)
             ).get();
         } catch (InterruptedException | ExecutionException e) {
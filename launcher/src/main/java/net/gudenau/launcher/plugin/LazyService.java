@@ -0,0 +1,79 @@
+package net.gudenau.launcher.plugin;
+
+import net.gudenau.launcher.api.util.Identified;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ServiceLoader;
+
+/**
+ * Stands in for a service provider of a lazy plugin, the plugin is initialized and the provider created on first use.
+ *
+ * {@link Identified#id()} only creates the provider and leaves the plugin alone, the launcher indexes providers by it
+ * during startup.
+ */
+final class LazyService<T> implements InvocationHandler {
+    private final ServiceLoader.Provider<? extends T> provider;
+    private final Runnable activation;
+    private volatile boolean active;
+    private volatile T instance;
+    
+    private LazyService(ServiceLoader.Provider<? extends T> provider, Runnable activation) {
+        this.provider = provider;
+        this.activation = activation;
+    }
+    
+    @NotNull
+    static <T> T create(@NotNull Class<T> service, @NotNull ServiceLoader.Provider<? extends T> provider, @NotNull Runnable activation) {
+        return service.cast(Proxy.newProxyInstance(
+            service.getClassLoader(),
+            new Class<?>[]{service},
+            new LazyService<>(provider, activation)
+        ));
+    }
+    
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return switch (method.getName()) {
+                case "equals" -> proxy == args[0];
+                case "hashCode" -> System.identityHashCode(proxy);
+                default -> "LazyService[" + provider.type().getName() + ']';
+            };
+        }
+        
+        if (!isId(method) && !active) {
+            activation.run();
+            active = true;
+        }
+        
+        try {
+            return method.invoke(instance(), args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+    
+    private T instance() {
+        var instance = this.instance;
+        if (instance == null) {
+            synchronized (this) {
+                instance = this.instance;
+                if (instance == null) {
+                    instance = provider.get();
+                    this.instance = instance;
+                }
+            }
+        }
+        return instance;
+    }
+    
+    private static boolean isId(Method method) {
+        return method.getName().equals("id") &&
+            method.getParameterCount() == 0 &&
+            Identified.class.isAssignableFrom(method.getDeclaringClass());
+    }
+}
@@ -0,0 +1,270 @@
+package net.gudenau.launcher.plugin;
+
+import net.gudenau.launcher.api.util.Logger;
+import net.gudenau.launcher.impl.util.Configuration;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * What a single plugin is allowed to use. Every plugin gets an executor of its own with a limited number of threads and
+ * a limited queue, its init runs there as well so every thread the plugin starts ends up in its thread group.
+ *
+ * The threads of the group are sampled every second and their CPU time and allocations are added up over a window of
+ * ten seconds. A plugin that goes over a limit is warned about, one that goes over twice the limit or runs more threads
+ * than it is allowed is throttled until the window ends: its executor holds new tasks and threads it starts on its own
+ * get the lowest priority. Whatever a thread did after the last sample is lost when it dies.
+ *
+ * Nothing is set up until the plugin first needs its executor or is charged, lazy plugins that never load cost
+ * nothing.
+ */
+final class PluginBudget {
+    private static final Logger LOGGER = Logger.forName("launcher");
+    private static final long SAMPLE_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+    private static final int WINDOW = 10;
+    
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final com.sun.management.ThreadMXBean ALLOCATIONS = THREADS instanceof com.sun.management.ThreadMXBean threads && threads.isThreadAllocatedMemorySupported() ? threads : null;
+    private static final boolean CPU = THREADS.isThreadCpuTimeSupported();
+    
+    // Holds the sampler, it only starts once the first budget is set up.
+    private static final class Sampler {
+        private static final ThreadGroup GROUP = new ThreadGroup("Plugins");
+        private static final Set<PluginBudget> BUDGETS = ConcurrentHashMap.newKeySet();
+        private static final Timer TIMER = new Timer("PluginBudgets", true);
+        
+        static {
+            GROUP.setMaxPriority(Thread.NORM_PRIORITY - 1);
+            TIMER.scheduleAtFixedRate(new TimerTask() {
+                @Override
+                public void run() {
+                    for (var budget : BUDGETS) {
+                        try {
+                            budget.sample();
+                        } catch (Throwable e) {
+                            LOGGER.error(e, "Failed to sample plugin %s", budget.name);
+                        }
+                    }
+                }
+            }, SAMPLE_INTERVAL, SAMPLE_INTERVAL);
+        }
+    }
+    
+    private final String name;
+    private volatile ThreadGroup group;
+    private volatile BudgetExecutor executor;
+    private boolean closed = false;
+    
+    // Last CPU time and allocations by thread id, only touched by the timer.
+    private final Map<Long, long[]> threads = new HashMap<>();
+    private int samples = 0;
+    
+    private final Object lock = new Object();
+    private long cpu = 0;
+    private long allocated = 0;
+    private boolean warned = false;
+    private boolean throttled = false;
+    private boolean crowded = false;
+    
+    PluginBudget(@NotNull String name) {
+        this.name = name;
+    }
+    
+    @NotNull
+    Executor executor() {
+        var executor = this.executor;
+        return executor == null ? start() : executor;
+    }
+    
+    private synchronized BudgetExecutor start() {
+        if (executor == null) {
+            group = new ThreadGroup(Sampler.GROUP, name);
+            executor = new BudgetExecutor();
+            if (closed) {
+                executor.shutdown();
+            } else {
+                Sampler.BUDGETS.add(this);
+            }
+        }
+        return executor;
+    }
+    
+    boolean owns(@NotNull Thread thread) {
+        // No thread can be in the group before it exists.
+        if (this.group == null) {
+            return false;
+        }
+        var group = thread.getThreadGroup();
+        while (group != null) {
+            if (group == this.group) {
+                return true;
+            }
+            group = group.getParent();
+        }
+        return false;
+    }
+    
+    /**
+     * Adds work that was done for this plugin on a thread outside of its group.
+     */
+    void charge(long cpu, long allocated) {
+        if (executor == null) {
+            start();
+        }
+        synchronized (lock) {
+            this.cpu += Math.max(0, cpu);
+            this.allocated += Math.max(0, allocated);
+            
+            var level = Math.max(
+                level(this.cpu, TimeUnit.MILLISECONDS.toNanos(Configuration.PLUGIN_CPU_LIMIT.get())),
+                level(this.allocated, (long) Configuration.PLUGIN_ALLOCATION_LIMIT.get() << 20)
+            );
+            if (level > 0 && !warned) {
+                warned = true;
+                LOGGER.warning("Plugin %s is over its budget: %s", name, usage());
+            }
+            if (level > 1) {
+                throttle("it used more than twice its budget: " + usage());
+            }
+        }
+    }
+    
+    // Called with the lock held.
+    private void throttle(String reason) {
+        if (!throttled) {
+            throttled = true;
+            group.setMaxPriority(Thread.MIN_PRIORITY);
+            LOGGER.warning("Plugin %s is throttled, %s", name, reason);
+        }
+    }
+    
+    private static int level(long used, long limit) {
+        if (limit <= 0 || used <= limit) {
+            return 0;
+        }
+        return used > limit * 2 ? 2 : 1;
+    }
+    
+    private String usage() {
+        return String.format(
+            Locale.ROOT,
+            "%d ms CPU and %d MiB allocated in the last %d seconds",
+            TimeUnit.NANOSECONDS.toMillis(cpu),
+            allocated >> 20,
+            TimeUnit.MILLISECONDS.toSeconds(SAMPLE_INTERVAL * (samples + 1))
+        );
+    }
+    
+    private void sample() {
+        var active = new Thread[group.activeCount() + 8];
+        var count = group.enumerate(active);
+        
+        long cpu = 0;
+        long allocated = 0;
+        var seen = new HashSet<Long>();
+        for (int i = 0; i < count; i++) {
+            var id = active[i].getId();
+            seen.add(id);
+            var last = threads.computeIfAbsent(id, (ignored) -> new long[2]);
+            if (CPU) {
+                var time = THREADS.getThreadCpuTime(id);
+                if (time >= 0) {
+                    cpu += time - last[0];
+                    last[0] = time;
+                }
+            }
+            if (ALLOCATIONS != null) {
+                var bytes = ALLOCATIONS.getThreadAllocatedBytes(id);
+                if (bytes >= 0) {
+                    allocated += bytes - last[1];
+                    last[1] = bytes;
+                }
+            }
+        }
+        threads.keySet().retainAll(seen);
+        charge(cpu, allocated);
+        
+        var limit = Configuration.PLUGIN_MAX_THREADS.get();
+        if (limit > 0 && count > limit) {
+            synchronized (lock) {
+                if (!crowded) {
+                    crowded = true;
+                    throttle(String.format(Locale.ROOT, "it is running %d threads, more than the %d it is allowed", count, limit));
+                }
+            }
+        }
+        
+        if (++samples >= WINDOW) {
+            samples = 0;
+            synchronized (lock) {
+                this.cpu = 0;
+                this.allocated = 0;
+                warned = false;
+                crowded = false;
+                if (throttled) {
+                    throttled = false;
+                    group.setMaxPriority(Thread.NORM_PRIORITY - 1);
+                    lock.notifyAll();
+                    LOGGER.info("Plugin %s is no longer throttled", name);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Stops tracking this plugin, tasks that are queued still run but new ones are rejected.
+     */
+    void close() {
+        synchronized (this) {
+            closed = true;
+            if (executor != null) {
+                Sampler.BUDGETS.remove(this);
+                executor.shutdown();
+            }
+        }
+        synchronized (lock) {
+            throttled = false;
+            lock.notifyAll();
+        }
+    }
+    
+    private final class BudgetExecutor extends ThreadPoolExecutor {
+        private BudgetExecutor() {
+            super(
+                Math.max(1, Configuration.PLUGIN_THREAD_LIMIT.get()),
+                Math.max(1, Configuration.PLUGIN_THREAD_LIMIT.get()),
+                30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(Math.max(1, Configuration.PLUGIN_QUEUE_LIMIT.get())),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+                    
+                    @Override
+                    public Thread newThread(@NotNull Runnable task) {
+                        var thread = new Thread(group, task, name + "-" + count.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }
+            );
+            allowCoreThreadTimeOut(true);
+        }
+        
+        @Override
+        protected void beforeExecute(Thread thread, Runnable task) {
+            synchronized (lock) {
+                while (throttled && !isShutdown()) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        thread.interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+    }
+}
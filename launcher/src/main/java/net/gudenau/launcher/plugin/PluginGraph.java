@@ -0,0 +1,133 @@
+package net.gudenau.launcher.plugin;
+
+import net.gudenau.launcher.api.Plugin;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * The init order of plugins. A plugin depends on the plugins it declares in {@link Plugin#dependencies()} and on every
+ * plugin from a module its module requires, it starts as soon as all of them are done so unrelated plugins run in
+ * parallel.
+ */
+final class PluginGraph {
+    private final Map<UUID, PluginWrapper> plugins;
+    private final Map<UUID, Set<UUID>> dependencies = new HashMap<>();
+    private final List<UUID> order;
+    
+    PluginGraph(@NotNull Map<UUID, PluginWrapper> plugins) {
+        this.plugins = plugins;
+        
+        var modules = new HashMap<String, Set<UUID>>();
+        for (var plugin : plugins.values()) {
+            modules.computeIfAbsent(plugin.module().getName(), (name) -> new HashSet<>()).add(plugin.id());
+        }
+        
+        for (var plugin : plugins.values()) {
+            var edges = new HashSet<UUID>();
+            for (var dependency : plugin.dependencies()) {
+                if (!plugins.containsKey(dependency)) {
+                    throw new IllegalStateException("Plugin " + plugin + " depends on missing plugin " + dependency);
+                }
+                edges.add(dependency);
+            }
+            
+            var descriptor = plugin.module().getDescriptor();
+            if (descriptor != null) {
+                for (var requires : descriptor.requires()) {
+                    edges.addAll(modules.getOrDefault(requires.name(), Set.of()));
+                }
+            }
+            edges.remove(plugin.id());
+            dependencies.put(plugin.id(), Set.copyOf(edges));
+        }
+        
+        order = sort();
+    }
+    
+    // Depth first, dependencies end up before their dependents and a node that is still on the stack is a cycle.
+    private List<UUID> sort() {
+        var order = new ArrayList<UUID>(plugins.size());
+        var done = new HashSet<UUID>();
+        var stack = new LinkedHashSet<UUID>();
+        for (var id : plugins.keySet()) {
+            visit(id, done, stack, order);
+        }
+        return Collections.unmodifiableList(order);
+    }
+    
+    private void visit(UUID id, Set<UUID> done, LinkedHashSet<UUID> stack, List<UUID> order) {
+        if (done.contains(id)) {
+            return;
+        }
+        if (!stack.add(id)) {
+            var cycle = new ArrayList<UUID>();
+            var inCycle = false;
+            for (var entry : stack) {
+                inCycle |= entry.equals(id);
+                if (inCycle) {
+                    cycle.add(entry);
+                }
+            }
+            cycle.add(id);
+            throw new IllegalStateException("Plugin dependency cycle: " + cycle.stream()
+                .map((plugin) -> plugins.get(plugin).toString())
+                .collect(Collectors.joining(" -> "))
+            );
+        }
+        
+        for (var dependency : dependencies.get(id)) {
+            visit(dependency, done, stack, order);
+        }
+        stack.remove(id);
+        done.add(id);
+        order.add(id);
+    }
+    
+    /**
+     * Gets plugins together with everything they depend on.
+     *
+     * @param ids The plugins
+     * @return The plugins and their dependencies in init order
+     */
+    @NotNull
+    List<UUID> closure(@NotNull Collection<UUID> ids) {
+        var needed = new HashSet<UUID>();
+        var pending = new ArrayDeque<>(ids);
+        while (!pending.isEmpty()) {
+            var id = pending.poll();
+            if (needed.add(id)) {
+                pending.addAll(dependencies.get(id));
+            }
+        }
+        return order.stream()
+            .filter(needed::contains)
+            .toList();
+    }
+    
+    /**
+     * Runs a task for plugins and everything they depend on on the executors of the plugins, each one once the tasks of
+     * its dependencies are done. A failed task fails everything that depends on it.
+     *
+     * @param ids The plugins to run the task for
+     * @param task The task to run
+     * @return A future that completes once every task is done
+     */
+    @NotNull
+    CompletableFuture<Void> run(@NotNull Collection<UUID> ids, @NotNull Consumer<PluginWrapper> task) {
+        var futures = new HashMap<UUID, CompletableFuture<Void>>();
+        for (var id : closure(ids)) {
+            var plugin = plugins.get(id);
+            var dependencies = this.dependencies.get(id).stream()
+                .map(futures::get)
+                .toArray(CompletableFuture[]::new);
+            futures.put(id, CompletableFuture.allOf(dependencies).thenCompose((ignored) ->
+                CompletableFuture.runAsync(() -> task.accept(plugin), plugin.budget().executor())
+            ));
+        }
+        return CompletableFuture.allOf(futures.values().toArray(CompletableFuture[]::new));
+    }
+}
@@ -1,124 +1,466 @@
 package net.gudenau.launcher.plugin;
 
 import net.gudenau.launcher.api.Plugin;
-import net.gudenau.launcher.api.account.AccountProvider;
 import net.gudenau.launcher.api.resource.ResourceManager;
 import net.gudenau.launcher.api.resource.ResourceProvider;
 import net.gudenau.launcher.api.util.Identified;
+import net.gudenau.launcher.api.util.Logger;
+import net.gudenau.launcher.boot.ModuleCache;
+import net.gudenau.launcher.impl.util.Configuration;
 import net.gudenau.launcher.impl.util.MiscUtil;
-import net.gudenau.launcher.impl.util.ThreadUtil;
 import net.gudenau.launcher.ui.LoadingScreen;
-import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.tree.ClassNode;
+import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
 import java.lang.module.ModuleFinder;
-import java.nio.file.FileSystems;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.lang.module.ModuleReference;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class PluginLoader {
-    private static ModuleLayer layer;
-    private static Map<UUID, PluginWrapper> plugins = Map.of();
+    private static final Logger LOGGER = Logger.forName("launcher");
     
-    public static void init() throws IOException {
-        if (layer != null) {
-            throw new IllegalStateException("Plugin loader already initialized");
-        }
-        
-        layer = createLayer();
+    /**
+     * A plugin jar. Every one gets a layer of its own, on top of the layers of the plugins it requires, so it can be
+     * replaced without touching unrelated plugins.
+     */
+    private record PluginModule(
+        @NotNull String name,
+        @NotNull Path jar,
+        @NotNull FileTime modified,
+        long size,
+        @NotNull ModuleLayer layer,
+        @NotNull List<PluginWrapper> plugins
+    ) {}
+    
+    private record PluginJar(@NotNull ModuleReference reference, @NotNull Path path, @NotNull FileTime modified, long size) {}
     
-        var manager = ResourceManager.get();
-        var plugins = new HashSet<PluginWrapper>();
-        for (var plugin : ServiceLoader.load(layer, Plugin.class)) {
-            var type = plugin.getClass();
-            manager.registerProvider(ResourceProvider.of(type.getModule().getName(), type));
-            plugins.add(new PluginWrapper(plugin));
+    /**
+     * Everything that is loaded, replaced as a whole when plugins are reloaded.
+     */
+    private record State(
+        @NotNull Map<String, PluginModule> modules,
+        @NotNull Map<UUID, PluginWrapper> plugins,
+        @NotNull PluginGraph graph
+    ) {
+        private static State of(Map<String, PluginModule> modules) {
+            var plugins = modules.values().stream()
+                .flatMap((module) -> module.plugins().stream())
+                .collect(Collectors.toUnmodifiableMap(Identified::id, Function.identity()));
+            return new State(Map.copyOf(modules), plugins, new PluginGraph(plugins));
         }
-        PluginLoader.plugins = plugins.stream().collect(Collectors.toUnmodifiableMap(
-            Identified::id,
-            Function.identity()
-        ));
+    }
     
-        LoadingScreen.setMaxProgress(plugins.size() + 1);
-        LoadingScreen.incrementProgress();
+    private static ModuleLayer parent;
+    private static volatile State state = new State(Map.of(), Map.of(), new PluginGraph(Map.of()));
+    /**
+     * Called after every reload, see {@link #registerReloadListener(Runnable)}.
+     */
+    private static final List<Runnable> RELOAD_LISTENERS = new CopyOnWriteArrayList<>();
     
-        ThreadUtil.waitFor(plugins.stream()
-            .<Runnable>map((plugin) -> () -> {
+    public static void init() throws IOException {
+        synchronized (PluginLoader.class) {
+            if (parent != null) {
+                throw new IllegalStateException("Plugin loader already initialized");
+            }
+            parent = PluginLoader.class.getModule().getLayer();
+            
+            state = State.of(define(scan().values(), Map.of()));
+        }
+        
+        // Lazy plugins are skipped unless an eager plugin depends on them.
+        var state = PluginLoader.state;
+        var eager = eager(state, state.plugins().values());
+        
+        LoadingScreen.setMaxProgress(eager.size() + 1);
+        LoadingScreen.incrementProgress();
+        
+        try {
+            state.graph().run(eager, (plugin) -> {
                 try {
                     plugin.init();
                 } finally {
                     LoadingScreen.incrementProgress();
                 }
-            })
-            .collect(Collectors.toUnmodifiableSet())
-        );
+            }).get();
+        } catch (InterruptedException | ExecutionException e) {
+            abandon(state, eager, e);
+            throw new RuntimeException("Failed to init plugins", e);
+        }
+        PluginProfiler.finish();
+        
+        if (Configuration.PLUGIN_HOT_RELOAD.get()) {
+            watch();
+        }
     }
     
     public static Optional<Plugin> getLoadedPlugin(UUID id) {
-        var plugin = plugins.get(id);
+        var plugin = state.plugins().get(id);
         if (plugin == null) {
             return Optional.empty();
         }
-        plugin.waitUntilLoaded();
+        if (plugin.isLazy()) {
+            activate(plugin);
+        } else {
+            plugin.waitUntilLoaded();
+        }
         return Optional.of(plugin);
     }
     
-    private static ModuleLayer createLayer() throws IOException {
-        var path = MiscUtil.createDirectory("plugins");
+    /**
+     * Gets the executor of a plugin, see {@link PluginBudget}.
+     */
+    @NotNull
+    public static Executor getExecutor(@NotNull UUID id) {
+        var plugin = state.plugins().get(id);
+        if (plugin == null) {
+            throw new IllegalArgumentException("Unknown plugin: " + id);
+        }
+        return plugin.budget().executor();
+    }
+    
+    // Runs on the thread that needs the plugin, dependencies that are already loaded or loading are only waited for.
+    private static void activate(PluginWrapper plugin) {
+        var state = PluginLoader.state;
+        for (var id : state.graph().closure(List.of(plugin.id()))) {
+            state.plugins().get(id).init();
+        }
+    }
+    
+    private static List<UUID> eager(State state, Collection<PluginWrapper> plugins) {
+        return state.graph().closure(plugins.stream()
+            .filter((plugin) -> !plugin.isLazy())
+            .map(Identified::id)
+            .toList()
+        );
+    }
+    
+    /**
+     * Picks up plugin jars that were added, changed or removed. Changed plugins are unloaded together with every plugin
+     * that depends on them, then everything that is still around is loaded again in fresh layers. Plugins that were
+     * not affected keep running.
+     */
+    public static void reload() throws IOException {
+        State previous;
+        State next;
+        Set<String> affected;
+        synchronized (PluginLoader.class) {
+            if (parent == null) {
+                throw new IllegalStateException("Plugin loader is not initialized");
+            }
+            
+            previous = state;
+            var jars = scan();
+            affected = new HashSet<String>();
+            for (var module : previous.modules().values()) {
+                var jar = jars.get(module.name());
+                if (
+                    jar == null ||
+                    !jar.path().equals(module.jar()) ||
+                    !jar.modified().equals(module.modified()) ||
+                    jar.size() != module.size()
+                ) {
+                    affected.add(module.name());
+                }
+            }
+            expandAffected(previous, affected);
+            
+            var loaded = jars.keySet().stream()
+                .filter((name) -> !previous.modules().containsKey(name) || affected.contains(name))
+                .collect(Collectors.toUnmodifiableSet());
+            if (loaded.isEmpty() && affected.isEmpty()) {
+                return;
+            }
+            
+            // Dependents go first, nothing may be left pointing at an unloaded plugin.
+            var order = new ArrayList<>(previous.graph().closure(previous.plugins().keySet()));
+            Collections.reverse(order);
+            for (var id : order) {
+                var plugin = previous.plugins().get(id);
+                if (!affected.contains(plugin.module().getName())) {
+                    continue;
+                }
+                if (plugin.isLoaded()) {
+                    try {
+                        plugin.unload();
+                    } catch (Throwable e) {
+                        LOGGER.error(e, "Failed to unload plugin %s", plugin);
+                    }
+                }
+                plugin.budget().close();
+            }
+            var remaining = new HashMap<>(previous.modules());
+            for (var name : affected) {
+                if (!remaining.remove(name).plugins().isEmpty()) {
+                    unregisterProvider(name);
+                }
+            }
+            
+            try {
+                next = State.of(define(
+                    loaded.stream().map(jars::get).toList(),
+                    remaining
+                ));
+            } catch (RuntimeException e) {
+                // Nothing that is left depends on what was unloaded, so it can keep going on its own.
+                state = State.of(remaining);
+                reloaded();
+                throw e;
+            }
+            state = next;
+            LOGGER.info("Reloaded plugins, unloaded %s and loaded %s", affected, loaded);
+        }
+        
+        var added = next.modules().values().stream()
+            .filter((module) -> !previous.modules().containsKey(module.name()) || affected.contains(module.name()))
+            .flatMap((module) -> module.plugins().stream())
+            .toList();
+        var eager = eager(next, added);
+        try {
+            next.graph().run(eager, PluginWrapper::init).get();
+        } catch (InterruptedException | ExecutionException e) {
+            abandon(next, eager, e);
+            throw new RuntimeException("Failed to init reloaded plugins", e);
+        } finally {
+            reloaded();
+        }
+    }
+    
+    /**
+     * Registers a callback that is called after every reload, anything that holds on to results of
+     * {@link #services(Class)} should look them up again in it.
+     *
+     * @param listener The callback
+     */
+    public static void registerReloadListener(@NotNull Runnable listener) {
+        RELOAD_LISTENERS.add(listener);
+    }
+    
+    private static void reloaded() {
+        for (var listener : RELOAD_LISTENERS) {
+            try {
+                listener.run();
+            } catch (Throwable e) {
+                LOGGER.error(e, "Failed to run plugin reload listener %s", listener);
+            }
+        }
+    }
+    
+    // Eager plugins that never started because a dependency failed would otherwise be waited for forever.
+    private static void abandon(State state, List<UUID> ids, Exception exception) {
+        var cause = exception instanceof ExecutionException ? exception.getCause() : exception;
+        for (var id : ids) {
+            state.plugins().get(id).abandon(cause);
+        }
+    }
+    
+    // Grows the set until no module outside of it requires a module in it or has a plugin depending on a plugin in it.
+    private static void expandAffected(State state, Set<String> affected) {
+        boolean changed;
+        do {
+            changed = false;
+            var plugins = affected.stream()
+                .map(state.modules()::get)
+                .flatMap((module) -> module.plugins().stream())
+                .map(Identified::id)
+                .collect(Collectors.toSet());
+            for (var module : state.modules().values()) {
+                if (affected.contains(module.name())) {
+                    continue;
+                }
+                var descriptor = module.layer().findModule(module.name()).orElseThrow().getDescriptor();
+                var requires = descriptor.requires().stream().anyMatch((dependency) -> affected.contains(dependency.name()));
+                var depends = module.plugins().stream().anyMatch((plugin) ->
+                    plugin.dependencies().stream().anyMatch(plugins::contains)
+                );
+                if (requires || depends) {
+                    affected.add(module.name());
+                    changed = true;
+                }
+            }
+        } while (changed);
+    }
     
+    private static Map<String, PluginJar> scan() throws IOException {
+        var path = MiscUtil.createDirectory("plugins");
+        
         Set<Path> pluginJars;
         try (var stream = Files.list(path)) {
             pluginJars = stream.filter(Files::isRegularFile)
                 .filter((file) -> file.getFileName().toString().endsWith(".jar"))
                 .collect(Collectors.toUnmodifiableSet());
         }
+        
+        // Plugins are modular jars that depend on us, anything else in the directory is ignored.
+        var jars = new HashMap<String, PluginJar>();
+        var references = ModuleCache.load(MiscUtil.getPath("cache", "plugin-modules.bin"), pluginJars, (file, exception) ->
+            LOGGER.warning(exception, "Ignoring %s while scanning plugins", file)
+        );
+        for (var reference : references) {
+            var descriptor = reference.descriptor();
+            if (descriptor.isAutomatic() || descriptor.requires().stream().noneMatch((dependency) -> dependency.name().equals("launcher"))) {
+                continue;
+            }
+            
+            var jar = Path.of(reference.location().orElseThrow());
+            var attributes = Files.readAttributes(jar, BasicFileAttributes.class);
+            var existing = jars.put(descriptor.name(), new PluginJar(reference, jar, attributes.lastModifiedTime(), attributes.size()));
+            if (existing != null) {
+                throw new IOException("Module " + descriptor.name() + " is provided by " + existing.path() + " and " + jar);
+            }
+        }
+        return jars;
+    }
     
-        var pluginNames = new HashSet<String>();
-        var iterator = pluginJars.iterator();
-        while (iterator.hasNext()) {
-            var jar = iterator.next();
-            try (var fs = FileSystems.newFileSystem(jar)) {
-                var moduleClass = fs.getPath("module-info.class");
-                if (!Files.isRegularFile(moduleClass)) {
-                    iterator.remove();
+    private static Map<String, PluginModule> define(Collection<PluginJar> jars, Map<String, PluginModule> loaded) {
+        var pending = jars.stream().collect(Collectors.toUnmodifiableMap(
+            (jar) -> jar.reference().descriptor().name(),
+            Function.identity()
+        ));
+        var modules = new HashMap<>(loaded);
+        try {
+            for (var name : pending.keySet()) {
+                define(name, pending, modules, new HashSet<>());
+            }
+        } catch (RuntimeException e) {
+            // Modules that were defined before the failure are dropped, don't leave their budgets and resources behind.
+            for (var module : modules.values()) {
+                if (loaded.containsKey(module.name())) {
                     continue;
                 }
-            
-                try (var stream = Files.newInputStream(moduleClass)) {
-                    var node = new ClassNode();
-                    new ClassReader(stream).accept(node, 0);
-                    var moduleNode = node.module;
-                    if (moduleNode == null) {
-                        iterator.remove();
-                        continue;
-                    }
-                
-                    if(moduleNode.requires.stream().noneMatch((dependency) ->
-                        dependency.module.equals("launcher")
-                    )) {
-                        iterator.remove();
-                        continue;
-                    }
-                
-                    pluginNames.add(moduleNode.name);
+                module.plugins().forEach((plugin) -> plugin.budget().close());
+                if (!module.plugins().isEmpty()) {
+                    unregisterProvider(module.name());
                 }
             }
+            throw e;
         }
+        return modules;
+    }
     
-        var finder = ModuleFinder.of(pluginJars.toArray(Path[]::new));
-        var parent = PluginLoader.class.getModule().getLayer();
-        var cf = parent.configuration().resolve(finder, ModuleFinder.of(), pluginNames);
-        var scl = ClassLoader.getSystemClassLoader();
-        return parent.defineModulesWithManyLoaders(cf, scl);
+    private static void unregisterProvider(String name) {
+        try {
+            ResourceManager.get().unregisterProvider(name);
+        } catch (Throwable e) {
+            LOGGER.error(e, "Failed to unregister resources of plugin module %s", name);
+        }
     }
     
+    // Plugins that are required by this one are defined first, their layers are the parents of this one.
+    private static void define(String name, Map<String, PluginJar> pending, Map<String, PluginModule> modules, Set<String> visiting) {
+        var jar = pending.get(name);
+        if (jar == null || modules.containsKey(name)) {
+            return;
+        }
+        if (!visiting.add(name)) {
+            throw new IllegalStateException("Plugin module " + name + " requires itself");
+        }
+        
+        var parents = new ArrayList<ModuleLayer>();
+        for (var dependency : jar.reference().descriptor().requires()) {
+            define(dependency.name(), pending, modules, visiting);
+            var module = modules.get(dependency.name());
+            if (module != null) {
+                parents.add(module.layer());
+            }
+        }
+        parents.add(parent);
+        
+        var configuration = java.lang.module.Configuration.resolve(
+            ModuleCache.finder(List.of(jar.reference())),
+            parents.stream().map(ModuleLayer::configuration).toList(),
+            ModuleFinder.of(),
+            Set.of(name)
+        );
+        var layer = ModuleLayer.defineModulesWithOneLoader(configuration, parents, ClassLoader.getSystemClassLoader()).layer();
+        
+        // The service loader also looks at parent layers, those plugins belong to other modules.
+        var plugins = ServiceLoader.load(layer, Plugin.class).stream()
+            .filter((provider) -> provider.type().getModule().getLayer() == layer)
+            .map((provider) -> new PluginWrapper(provider.get()))
+            .toList();
+        if (!plugins.isEmpty()) {
+            ResourceManager.get().registerProvider(ResourceProvider.of(name, plugins.get(0).type()));
+        }
+        
+        modules.put(name, new PluginModule(name, jar.path(), jar.modified(), jar.size(), layer, plugins));
+    }
+    
+    private static void watch() {
+        WatchService watcher;
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+            MiscUtil.getPath("plugins").register(
+                watcher,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY
+            );
+        } catch (IOException e) {
+            LOGGER.warning(e, "Failed to watch plugins, hot reload is disabled");
+            return;
+        }
+        
+        var thread = new Thread(() -> {
+            while (true) {
+                try {
+                    var key = watcher.take();
+                    // Copying a jar fires a burst of events, wait for it to settle.
+                    do {
+                        key.pollEvents();
+                        key.reset();
+                    } while ((key = watcher.poll(500, TimeUnit.MILLISECONDS)) != null);
+                    reload();
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Throwable e) {
+                    LOGGER.error(e, "Failed to reload plugins");
+                }
+            }
+        }, "PluginWatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Gets the providers of a service. Providers from modules of lazy plugins that did not load yet are proxies that
+     * load the plugin on their first use, as long as the service is an interface.
+     *
+     * Every call looks at the plugins that are loaded right now, providers from earlier calls are not updated by a
+     * reload. Use {@link #registerReloadListener(Runnable)} to look them up again.
+     */
     public static <T> Stream<T> services(Class<T> service) {
-        return ServiceLoader.load(layer, service).stream()
-            .map(ServiceLoader.Provider::get);
+        var state = PluginLoader.state;
+        var providers = Stream.concat(
+            ServiceLoader.load(parent, service).stream(),
+            state.modules().values().stream().flatMap((module) -> ServiceLoader.load(module.layer(), service).stream()
+                .filter((provider) -> provider.type().getModule().getLayer() == module.layer())
+            )
+        );
+        return providers.map((provider) -> {
+            var module = state.modules().get(provider.type().getModule().getName());
+            var owners = module == null ? List.<PluginWrapper>of() : module.plugins().stream()
+                .filter((plugin) -> plugin.isLazy() && !plugin.isLoaded())
+                .toList();
+            if (owners.isEmpty()) {
+                return provider.get();
+            }
+            
+            Runnable activation = () -> owners.forEach(PluginLoader::activate);
+            if (!service.isInterface()) {
+                activation.run();
+                return provider.get();
+            }
+            return LazyService.create(service, provider, activation);
+        });
     }
 }
@@ -0,0 +1,257 @@
+package net.gudenau.launcher.plugin;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import net.gudenau.launcher.api.util.Logger;
+import net.gudenau.launcher.impl.util.Configuration;
+import net.gudenau.launcher.impl.util.MiscUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Measures how long every plugin takes to init and keeps the last few startups around so slow plugins are easy to find.
+ *
+ * Wall time, CPU time and allocations are taken from the thread that runs the init, work a plugin hands off to other
+ * threads is not included. The class count is the number of classes the JVM loaded while the init ran, plugins that
+ * init at the same time are counted against each other.
+ */
+public final class PluginProfiler {
+    private static final Logger LOGGER = Logger.forName("launcher");
+    private static final Path HISTORY_PATH = MiscUtil.getPath("cache", "plugin-profiles.json");
+    
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final ClassLoadingMXBean CLASSES = ManagementFactory.getClassLoadingMXBean();
+    private static final com.sun.management.ThreadMXBean ALLOCATIONS = THREADS instanceof com.sun.management.ThreadMXBean threads && threads.isThreadAllocatedMemorySupported() ? threads : null;
+    private static final boolean CPU = THREADS.isCurrentThreadCpuTimeSupported();
+    
+    /**
+     * The cost of a single plugin init, times are in nanoseconds. CPU time and allocations are -1 when the JVM can't
+     * measure them.
+     */
+    public record Sample(@NotNull UUID id, @NotNull String name, long wall, long cpu, long allocated, long classes) {}
+    
+    /**
+     * The plugin inits of a single startup, slowest first.
+     */
+    public record Run(long time, @NotNull List<Sample> samples) {}
+    
+    private static final List<Sample> CURRENT = new ArrayList<>();
+    private static List<Run> history;
+    private static boolean finished = false;
+    
+    @NotNull
+    static Sample measure(@NotNull PluginWrapper plugin, @NotNull Runnable init) {
+        Sample sample;
+        var classes = CLASSES.getTotalLoadedClassCount();
+        var allocated = ALLOCATIONS == null ? 0 : ALLOCATIONS.getCurrentThreadAllocatedBytes();
+        var cpu = CPU ? THREADS.getCurrentThreadCpuTime() : 0;
+        var wall = System.nanoTime();
+        try {
+            init.run();
+        } finally {
+            sample = new Sample(
+                plugin.id(),
+                plugin.type().getName(),
+                System.nanoTime() - wall,
+                CPU ? THREADS.getCurrentThreadCpuTime() - cpu : -1,
+                ALLOCATIONS == null ? -1 : ALLOCATIONS.getCurrentThreadAllocatedBytes() - allocated,
+                CLASSES.getTotalLoadedClassCount() - classes
+            );
+            
+            boolean late;
+            synchronized (CURRENT) {
+                late = finished;
+                if (!late) {
+                    CURRENT.add(sample);
+                }
+            }
+            if (late) {
+                LOGGER.info("Plugin %s took %s to init", sample.name(), format(sample));
+            }
+        }
+        return sample;
+    }
+    
+    /**
+     * Ends the startup, everything measured so far is stored and logged. Plugins that init later are only logged.
+     */
+    static void finish() {
+        Run run;
+        synchronized (CURRENT) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            run = new Run(System.currentTimeMillis(), rank(CURRENT));
+            CURRENT.clear();
+        }
+        
+        var runs = new ArrayList<Run>();
+        runs.add(run);
+        runs.addAll(history());
+        var limit = Math.max(1, Configuration.PLUGIN_PROFILE_HISTORY.get());
+        if (runs.size() > limit) {
+            runs.subList(limit, runs.size()).clear();
+        }
+        synchronized (PluginProfiler.class) {
+            history = List.copyOf(runs);
+        }
+        
+        LOGGER.info(report(runs));
+        
+        try {
+            save(runs);
+        } catch (IOException e) {
+            LOGGER.warning(e, "Failed to save plugin profiles");
+        }
+    }
+    
+    /**
+     * Gets the stored startups, newest first.
+     *
+     * @return The stored startups
+     */
+    @NotNull
+    public static synchronized List<Run> history() {
+        if (history == null) {
+            try {
+                history = load();
+            } catch (IOException e) {
+                LOGGER.warning(e, "Failed to read plugin profiles");
+                history = List.of();
+            }
+        }
+        return history;
+    }
+    
+    /**
+     * Gets the average wall time of every plugin over some startups.
+     *
+     * @param runs The startups
+     * @return The average wall time in nanoseconds by plugin
+     */
+    @NotNull
+    public static Map<UUID, Long> averageWall(@NotNull List<Run> runs) {
+        return runs.stream()
+            .flatMap((run) -> run.samples().stream())
+            .collect(Collectors.groupingBy(Sample::id, Collectors.collectingAndThen(
+                Collectors.averagingLong(Sample::wall),
+                Math::round
+            )));
+    }
+    
+    private static List<Sample> rank(Collection<Sample> samples) {
+        return samples.stream()
+            .sorted(Comparator.comparingLong(Sample::wall).reversed())
+            .toList();
+    }
+    
+    private static String report(List<Run> runs) {
+        var samples = runs.get(0).samples();
+        if (samples.isEmpty()) {
+            return "No plugins were initialized";
+        }
+        
+        var average = averageWall(runs);
+        var builder = new StringBuilder("Plugin init times, slowest first:");
+        for (int i = 0; i < samples.size(); i++) {
+            var sample = samples.get(i);
+            builder.append("\n  ")
+                .append(i + 1)
+                .append(". ")
+                .append(sample.name())
+                .append(": ")
+                .append(format(sample))
+                .append(", average ")
+                .append(millis(average.get(sample.id())))
+                .append(" over ")
+                .append(runs.size())
+                .append(runs.size() == 1 ? " start" : " starts");
+        }
+        return builder.toString();
+    }
+    
+    @NotNull
+    public static String format(@NotNull Sample sample) {
+        return millis(sample.wall()) +
+            " wall, " + (sample.cpu() < 0 ? "?" : millis(sample.cpu())) +
+            " CPU, " + (sample.allocated() < 0 ? "?" : (sample.allocated() >> 10) + " KiB") +
+            " allocated, " + sample.classes() + " classes";
+    }
+    
+    @NotNull
+    public static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.1f ms", nanos / 1_000_000D);
+    }
+    
+    private static List<Run> load() throws IOException {
+        if (!Files.exists(HISTORY_PATH)) {
+            return List.of();
+        }
+        
+        var runs = new ArrayList<Run>();
+        for (var element : MiscUtil.readJsonArray(HISTORY_PATH)) {
+            try {
+                var run = element.getAsJsonObject();
+                var samples = new ArrayList<Sample>();
+                for (var entry : run.getAsJsonArray("plugins")) {
+                    var sample = entry.getAsJsonObject();
+                    samples.add(new Sample(
+                        UUID.fromString(sample.get("id").getAsString()),
+                        sample.get("name").getAsString(),
+                        sample.get("wall").getAsLong(),
+                        sample.get("cpu").getAsLong(),
+                        sample.get("allocated").getAsLong(),
+                        sample.get("classes").getAsLong()
+                    ));
+                }
+                runs.add(new Run(run.get("time").getAsLong(), rank(samples)));
+            } catch (RuntimeException e) {
+                throw new IOException("Failed to read plugin profiles: " + HISTORY_PATH, e);
+            }
+        }
+        return List.copyOf(runs);
+    }
+    
+    private static void save(List<Run> runs) throws IOException {
+        var array = new JsonArray();
+        for (var run : runs) {
+            var plugins = new JsonArray();
+            for (var sample : run.samples()) {
+                var object = new JsonObject();
+                object.addProperty("id", sample.id().toString());
+                object.addProperty("name", sample.name());
+                object.addProperty("wall", sample.wall());
+                object.addProperty("cpu", sample.cpu());
+                object.addProperty("allocated", sample.allocated());
+                object.addProperty("classes", sample.classes());
+                plugins.add(object);
+            }
+            
+            var object = new JsonObject();
+            object.addProperty("time", run.time());
+            object.add("plugins", plugins);
+            array.add(object);
+        }
+        
+        MiscUtil.ensureParentsExist(HISTORY_PATH);
+        var temp = HISTORY_PATH.resolveSibling(HISTORY_PATH.getFileName() + ".tmp");
+        try (var writer = Files.newBufferedWriter(temp)) {
+            writer.write(array.toString());
+        }
+        Files.move(temp, HISTORY_PATH, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    private PluginProfiler() {
+        throw new AssertionError();
+    }
+}
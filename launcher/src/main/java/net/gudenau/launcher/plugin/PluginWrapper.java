@@ -3,16 +3,25 @@ package net.gudenau.launcher.plugin;
 import net.gudenau.launcher.api.Plugin;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Set;
 import java.util.UUID;
 
 final class PluginWrapper implements Plugin {
     private final Plugin plugin;
     private final UUID id;
+    private final Set<UUID> dependencies;
+    private final boolean lazy;
+    private final PluginBudget budget;
+    private boolean started = false;
     private volatile boolean loaded = false;
+    private volatile Throwable failure;
     
     public PluginWrapper(Plugin plugin) {
         this.plugin = plugin;
         this.id = plugin.id();
+        this.dependencies = Set.copyOf(plugin.dependencies());
+        this.lazy = plugin.isLazy();
+        this.budget = new PluginBudget(plugin.getClass().getName());
     }
     
     @Override
@@ -20,27 +29,109 @@ final class PluginWrapper implements Plugin {
         return id;
     }
     
+    @Override
+    public @NotNull Set<UUID> dependencies() {
+        return dependencies;
+    }
+    
+    @Override
+    public boolean isLazy() {
+        return lazy;
+    }
+    
+    boolean isLoaded() {
+        return loaded;
+    }
+    
+    Class<?> type() {
+        return plugin.getClass();
+    }
+    
+    Module module() {
+        return plugin.getClass().getModule();
+    }
+    
+    PluginBudget budget() {
+        return budget;
+    }
+    
     @Override
     public void init() {
-        plugin.init();
-        
+        // Lazy plugins can be activated from several threads at once, only the first one runs the real init.
+        boolean first;
         synchronized (this) {
+            first = !started;
+            started = true;
+        }
+        if (!first) {
+            waitUntilLoaded();
+            return;
+        }
+        
+        // Lazy plugins init on the thread that needs them, that thread is not sampled for the plugin.
+        try {
+            var sample = PluginProfiler.measure(this, plugin::init);
+            if (!budget.owns(Thread.currentThread())) {
+                budget.charge(sample.cpu(), sample.allocated());
+            }
             loaded = true;
+        } catch (Throwable e) {
+            failure = e;
+            throw e;
+        } finally {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+    
+    /**
+     * Gives up on a plugin that was never started, like the dependents of a plugin that failed to init. Anything
+     * waiting for it fails with the cause.
+     */
+    void abandon(@NotNull Throwable cause) {
+        synchronized (this) {
+            if (started) {
+                return;
+            }
+            started = true;
+            failure = cause;
             notifyAll();
         }
     }
     
+    @Override
+    public void unload() {
+        plugin.unload();
+    }
+    
+    @Override
+    public String toString() {
+        return plugin.getClass().getName() + '[' + id + ']';
+    }
+    
+    /**
+     * Waits for the init of this plugin to finish.
+     *
+     * @throws RuntimeException If the init failed or the thread was interrupted
+     */
     public void waitUntilLoaded() {
         if (loaded) {
             return;
         }
         
         synchronized (this) {
-            while (loaded) {
+            while (!loaded && failure == null) {
                 try {
                     wait();
-                } catch (InterruptedException ignored) {}
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting for plugin " + this, e);
+                }
             }
         }
+        if (failure != null) {
+            throw new RuntimeException("Plugin " + this + " failed to init", failure);
+        }
     }
 }
@@ -8,6 +8,7 @@ import net.gudenau.launcher.impl.util.ThreadUtil;
 import net.gudenau.launcher.ui.dialog.AddProfileDialog;
 import net.gudenau.launcher.ui.dialog.Dialog;
 import net.gudenau.launcher.ui.dialog.DialogPanel;
+import net.gudenau.launcher.ui.dialog.PluginProfileDialog;
 import net.gudenau.launcher.ui.dialog.SettingsDialog;
 import net.gudenau.launcher.ui.renderer.ProfileCellRenderer;
 
@@ -160,6 +161,9 @@ public final class MainScreen {
             }
         }), constraints);
         
+        constraints.gridx = 4;
+        panel.add(button("launcher.ui.plugin_profile", () -> pushDialog(new PluginProfileDialog())), constraints);
+        
         return panel;
     }
     
@@ -0,0 +1,51 @@
+package net.gudenau.launcher.ui.dialog;
+
+import net.gudenau.launcher.api.util.LanguageManager;
+import net.gudenau.launcher.plugin.PluginProfiler;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.stream.Stream;
+
+import static net.gudenau.launcher.ui.UiUtils.*;
+
+public final class PluginProfileDialog extends Dialog {
+    private static final String[] COLUMNS = {"plugin", "wall", "average", "cpu", "allocated", "classes"};
+    
+    public PluginProfileDialog() {
+        var constraints = new GridBagConstraints();
+        constraints.gridy = 0;
+        constraints.fill = GridBagConstraints.BOTH;
+        
+        var runs = PluginProfiler.history();
+        if (runs.isEmpty()) {
+            add(label("launcher.ui.dialog.plugin_profile.empty"), constraints);
+        } else {
+            var average = PluginProfiler.averageWall(runs);
+            var rows = runs.get(0).samples().stream()
+                .map((sample) -> new Object[] {
+                    sample.name(),
+                    PluginProfiler.millis(sample.wall()),
+                    PluginProfiler.millis(average.get(sample.id())),
+                    sample.cpu() < 0 ? "?" : PluginProfiler.millis(sample.cpu()),
+                    sample.allocated() < 0 ? "?" : (sample.allocated() >> 10) + " KiB",
+                    sample.classes()
+                })
+                .toArray(Object[][]::new);
+            var columns = Stream.of(COLUMNS)
+                .map((column) -> LanguageManager.get().translate("launcher.ui.dialog.plugin_profile." + column))
+                .toArray();
+            
+            var table = new JTable(rows, columns);
+            table.setEnabled(false);
+            var scrollPane = new JScrollPane(table);
+            scrollPane.setPreferredSize(new Dimension(560, 240));
+            scrollPane.setBorder(border("launcher.ui.dialog.plugin_profile.title"));
+            add(scrollPane, constraints);
+        }
+        
+        constraints.gridy++;
+        constraints.fill = GridBagConstraints.NONE;
+        add(button("launcher.ui.dialog.plugin_profile.close", this::close), constraints);
+    }
+}
@@ -88,7 +88,7 @@ public final class SettingsDialog extends Dialog {
                 if (value instanceof Boolean bool) {
                     component = new JCheckBox((String) null, bool);
                 } else if (value instanceof Integer integer) {
-                    component = new JSpinner(new SpinnerNumberModel(integer.intValue(), 0, 9999, 1));
+                    component = new JSpinner(new SpinnerNumberModel(integer.intValue(), 0, Math.max(9999, integer), 1));
                 } else {
                     component = new JLabel(String.valueOf(value));
                 }